@@ -0,0 +1,112 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableList;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.ChunkPlanetData;
+
+/**
+ * Encoding and decoding one chunk's planets. {@code readLegacy} decodes the
+ * same planets in the original record format, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChunkPlanetDataBenchmark {
+
+    @Param({ "1", "16", "256" })
+    public int planets;
+
+    private ChunkPlanetData data;
+    private ByteBuffer buffer;
+    private ByteBuffer encoded;
+    private ByteBuffer legacy;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        ImmutableList.Builder<Planet> planets = ImmutableList.builder();
+        for (int i = 0; i < this.planets; i++) {
+            planets.add(Planet.create(
+                    new Vector3i(random.nextInt(16), random.nextInt(256),
+                            random.nextInt(16)),
+                    random.nextInt(15)));
+        }
+        this.data = ChunkPlanetData.fromPlanets(planets.build());
+        this.buffer = ByteBuffer.allocate(this.data.getEncodedSize());
+        this.encoded = ByteBuffer.allocate(this.data.getEncodedSize());
+        this.data.write(this.encoded);
+        this.encoded.flip();
+        // (id, length, x, y, z, radius) per planet
+        this.legacy = ByteBuffer.allocate(this.planets * 24);
+        for (Planet planet : this.data.getPlanets()) {
+            Vector3i pos = planet.getPosition();
+            this.legacy.putInt(0).putInt(16).putInt(pos.getX())
+                    .putInt(pos.getY()).putInt(pos.getZ())
+                    .putInt(planet.getRadius());
+        }
+        this.legacy.flip();
+    }
+
+    @Benchmark
+    public ByteBuffer write() {
+        this.buffer.clear();
+        this.data.write(this.buffer);
+        return this.buffer;
+    }
+
+    @Benchmark
+    public ChunkPlanetData read() {
+        return ChunkPlanetData.read(this.encoded.duplicate());
+    }
+
+    @Benchmark
+    public ChunkPlanetData readLegacy() {
+        return ChunkPlanetData.read(this.legacy.duplicate());
+    }
+
+}
@@ -0,0 +1,162 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import static me.kenzierocks.plugins.planetesimals.worldgen.PlanetPopulator.MAX_RADIUS;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.LoggerFactory;
+import org.slf4j.helpers.NOPLogger;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.Database;
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetDesign;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetPopulator;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.StoredPlanet;
+
+/**
+ * {@link PlanetPopulator#canPlaceAt} as called for every placement attempt,
+ * against a file backed H2 database. {@code warm} reuses one context, so
+ * after warmup every check is answered from memory; {@code cold} starts
+ * from an empty index each time, so every check fills the occupancy bitmap
+ * and goes to the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CollisionBenchmark {
+
+    // Planets are spread over this many chunks along x and z.
+    private static final int AREA_CHUNKS = 256;
+
+    @Param({ "10000", "100000" })
+    public int planets;
+
+    private final World world = Stubs.world(new long[1]);
+    private final Random random = new Random(42);
+    private final ChunkLayout layout = Stubs.chunkLayout();
+    private final PlanetDesign design =
+            PlanetDesign.of(Stubs.blockType("stone"));
+    private Path directory;
+    private Database database;
+    private PlanetPopulator warm;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("planetesimals-bench");
+        this.database = new Database(
+                LoggerFactory.getLogger(CollisionBenchmark.class),
+                Runnable::run);
+        this.database.init("jdbc:h2:" + this.directory.resolve("planets")
+                .toAbsolutePath(), 16384, 32, 4);
+        List<StoredPlanet> batch = new ArrayList<>();
+        for (int i = 0; i < this.planets; i++) {
+            Vector3i pos = randomPosition();
+            batch.add(StoredPlanet.create(this.world.getUniqueId(),
+                    this.layout.forceToChunk(pos),
+                    Planet.create(pos, this.random.nextInt(MAX_RADIUS))));
+            if (batch.size() == 1024) {
+                this.database.insertPlanets(batch);
+                batch.clear();
+            }
+        }
+        this.database.insertPlanets(batch);
+        this.warm = newPopulator();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.database.close();
+        try (Stream<Path> files = Files.walk(this.directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        }
+    }
+
+    private Vector3i randomPosition() {
+        int extent = AREA_CHUNKS * Stubs.CHUNK_SIZE.getX();
+        return new Vector3i(this.random.nextInt(extent),
+                MAX_RADIUS + this.random.nextInt(256 - 2 * MAX_RADIUS),
+                this.random.nextInt(extent));
+    }
+
+    private boolean check(PlanetPopulator populator) {
+        Vector3i pos = randomPosition();
+        return populator.canPlaceAt(this.world, pos.getX(), pos.getY(),
+                pos.getZ());
+    }
+
+    @Benchmark
+    public boolean warm() {
+        return check(this.warm);
+    }
+
+    @Benchmark
+    public boolean cold() {
+        return check(newPopulator());
+    }
+
+    private PlanetPopulator newPopulator() {
+        return new PlanetPopulator(
+                new HeadlessContext(this.database, NOPLogger.NOP_LOGGER,
+                        Integer.MAX_VALUE),
+                this.design, true, false, 0);
+    }
+
+}
@@ -0,0 +1,122 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
+
+import me.kenzierocks.plugins.planetesimals.Database;
+import me.kenzierocks.plugins.planetesimals.worldgen.GenerationMetrics;
+import me.kenzierocks.plugins.planetesimals.worldgen.ParallelVoxelizer;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetApplyQueue;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetContext;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetPopulator;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.ChunkOccupancy;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetIndex;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetWriter;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PopulatedChunks;
+
+/**
+ * A {@link PlanetContext} over a database, with no server. Occupancy and
+ * populated chunk bitmaps are kept in memory only, and planets are drawn on
+ * the calling thread, so there is no voxelizer or apply queue.
+ */
+public final class HeadlessContext implements PlanetContext {
+
+    private final ChunkLayout layout = Stubs.chunkLayout();
+    private final Map<UUID, PlanetIndex> indexes = new ConcurrentHashMap<>();
+    private final Map<UUID, PopulatedChunks> populated =
+            new ConcurrentHashMap<>();
+    private final Database database;
+    private final PlanetWriter writer;
+    private final GenerationMetrics metrics = new GenerationMetrics();
+    private final int indexChunks;
+
+    /**
+     * @param writerLogger - where the planet writer reports failures
+     * @param indexChunks - how many chunks each world's index keeps
+     */
+    public HeadlessContext(Database database, Logger writerLogger,
+            int indexChunks) {
+        this.database = database;
+        this.writer = new PlanetWriter(database, writerLogger);
+        this.indexChunks = indexChunks;
+    }
+
+    @Override
+    public ChunkLayout getChunkLayout() {
+        return this.layout;
+    }
+
+    @Override
+    public PlanetIndex getPlanetIndex(World world) {
+        return this.indexes.computeIfAbsent(world.getUniqueId(),
+                id -> new PlanetIndex(this.database, this.writer, id,
+                        new ChunkOccupancy(this.database, id, null,
+                                this.layout.getChunkSize(),
+                                PlanetPopulator.MAX_RADIUS,
+                                Integer.MAX_VALUE),
+                        this.indexChunks, this.metrics));
+    }
+
+    @Override
+    public PopulatedChunks getPopulatedChunks(World world) {
+        return this.populated.computeIfAbsent(world.getUniqueId(),
+                id -> new PopulatedChunks(null, Integer.MAX_VALUE));
+    }
+
+    @Override
+    public PlanetWriter getPlanetWriter() {
+        return this.writer;
+    }
+
+    @Override
+    public ParallelVoxelizer getVoxelizer() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PlanetApplyQueue getApplyQueue() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public GenerationMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    @Override
+    public Logger getLogger() {
+        // Keep log output out of measured runs.
+        return NOPLogger.NOP_LOGGER;
+    }
+
+}
@@ -0,0 +1,144 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongepowered.api.util.weighted.VariableAmount;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.Database;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetDesign;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetPopulator;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetWriter;
+import relocatedplanets.org.spongepowered.common.world.gen.populators.RandomObjectPopulator;
+
+/**
+ * Runs planet population over a square of chunks with no server: the world,
+ * chunks and layout are stand-ins, and planets go to a file backed H2
+ * database like on a live server. Prints chunks per second, per chunk
+ * latency percentiles and the allocation rate of the populating thread.
+ *
+ * <p>Arguments are the number of chunks (default 4096), the seed (default
+ * 42) and the database directory (default a new temporary directory).
+ */
+public final class LoadTest {
+
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(LoadTest.class);
+
+    // Small enough that long runs exercise eviction.
+    private static final int INDEX_CHUNKS = 4096;
+
+    public static void main(String[] args) throws IOException {
+        int chunkCount = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 42;
+        Path directory = args.length > 2 ? Paths.get(args[2])
+                : Files.createTempDirectory("planetesimals-load");
+        System.out.println("Database in " + directory);
+        Database database = new Database(LOGGER, Runnable::run);
+        database.init("jdbc:h2:" + directory.resolve("planets")
+                .toAbsolutePath(), 16384, 32, 4);
+        HeadlessContext context =
+                new HeadlessContext(database, LOGGER, INDEX_CHUNKS);
+        context.getPlanetWriter().start();
+        try {
+            run(context, chunkCount, seed);
+        } finally {
+            context.getPlanetWriter().stop();
+            database.close();
+        }
+    }
+
+    private static void run(HeadlessContext context, int chunkCount,
+            long seed) {
+        long[] writes = new long[1];
+        World world = Stubs.world(writes);
+        PlanetPopulator planets = new PlanetPopulator(context,
+                PlanetDesign.of(Stubs.blockType("stone")), true, false, 0);
+        RandomObjectPopulator populator = new RandomObjectPopulator(planets,
+                VariableAmount.fixed(10),
+                VariableAmount.baseWithRandomAddition(planets.getMin().getY(),
+                        planets.getMax().getY() - planets.getMin().getY()),
+                0.2);
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory
+                        .getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int side = (int) Math.ceil(Math.sqrt(chunkCount));
+        long[] latencies = new long[chunkCount];
+        Random random = new Random(seed);
+        PlanetWriter writer = context.getPlanetWriter();
+        long startPlanets = writer.getSubmittedCount();
+        long startBytes = threads.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        for (int i = 0; i < chunkCount; i++) {
+            Chunk chunk = world
+                    .loadChunk(new Vector3i(i % side, 0, i / side), true)
+                    .get();
+            random.setSeed(seed ^ i * 341873128712L);
+            long before = System.nanoTime();
+            populator.populate(chunk, random);
+            latencies[i] = System.nanoTime() - before;
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(threadId) - startBytes;
+        long placed = writer.getSubmittedCount() - startPlanets;
+        double seconds = elapsed / 1e9;
+        Arrays.sort(latencies);
+        System.out.printf("%d chunks in %.2f s: %.1f chunks/s, %d planets"
+                + " (%.1f/s), %d blocks%n", chunkCount, seconds,
+                chunkCount / seconds, placed, placed / seconds, writes[0]);
+        System.out.printf("latency us: p50 %.1f, p90 %.1f, p99 %.1f,"
+                + " p99.9 %.1f, max %.1f%n", micros(latencies, 0.5),
+                micros(latencies, 0.9), micros(latencies, 0.99),
+                micros(latencies, 0.999), micros(latencies, 1));
+        System.out.printf("allocated: %.1f MB/s, %d bytes/chunk%n",
+                bytes / seconds / (1 << 20), bytes / chunkCount);
+        context.getMetrics().digest().forEach(System.out::println);
+    }
+
+    private static double micros(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)]
+                / (double) TimeUnit.MICROSECONDS.toNanos(1);
+    }
+
+    private LoadTest() {
+    }
+
+}
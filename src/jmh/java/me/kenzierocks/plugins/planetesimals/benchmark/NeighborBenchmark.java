@@ -0,0 +1,91 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.google.common.collect.ImmutableList;
+
+import me.kenzierocks.plugins.planetesimals.util.LongHashSet;
+import me.kenzierocks.plugins.planetesimals.world.ChunkBoundary;
+import me.kenzierocks.plugins.planetesimals.world.ChunkKey;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeighborBenchmark {
+
+    private ChunkBoundary chunk;
+    private List<ChunkBoundary> area;
+    private final LongHashSet packedArea = new LongHashSet();
+    private final LongHashSet packedNeighbors = new LongHashSet();
+
+    @Setup
+    public void setUp() {
+        this.chunk = ChunkBoundary.create(12, 0, -7);
+        ImmutableList.Builder<ChunkBoundary> area = ImmutableList.builder();
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) {
+                area.add(ChunkBoundary.create(12 + x, 0, -7 + z));
+                this.packedArea.add(ChunkKey.pack(12 + x, 0, -7 + z));
+            }
+        }
+        this.area = area.build();
+    }
+
+    @Benchmark
+    public Set<ChunkBoundary> neighborsOfChunk() {
+        return ChunkBoundary.getNeighbors(this.chunk);
+    }
+
+    @Benchmark
+    public Set<ChunkBoundary> neighborsOfArea() {
+        return ChunkBoundary.getNeighbors(this.area);
+    }
+
+    @Benchmark
+    public int neighborsOfAreaPacked() {
+        this.packedNeighbors.clear();
+        ChunkKey.addNeighbors(this.packedArea, this.packedNeighbors);
+        return this.packedNeighbors.size();
+    }
+
+}
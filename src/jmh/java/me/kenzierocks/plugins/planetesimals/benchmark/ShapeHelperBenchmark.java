@@ -0,0 +1,108 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.ChunkedBlockWriter;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetDesign;
+import me.kenzierocks.plugins.planetesimals.worldgen.ShapeHelper;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShapeHelperBenchmark {
+
+    private static final Vector3i CENTER = new Vector3i(1000, 128, -1000);
+    private static final Vector3i CLIP_MIN = new Vector3i(-30_000_000, 0,
+            -30_000_000);
+    private static final Vector3i CLIP_MAX = new Vector3i(30_000_000, 255,
+            30_000_000);
+
+    @Param({ "4", "8", "15", "32", "64" })
+    public int radius;
+
+    @Param({ "solid", "hollow", "layered" })
+    public String shape;
+
+    private PlanetDesign design;
+    private boolean filled;
+    private final long[] writes = new long[1];
+    private World world;
+
+    @Setup
+    public void setUp() {
+        this.filled = !this.shape.equals("hollow");
+        this.design = this.shape.equals("layered")
+                ? PlanetDesign.layered(Stubs.blockType("stone"),
+                        Stubs.blockType("netherrack"),
+                        Stubs.blockType("obsidian"))
+                : PlanetDesign.of(Stubs.blockType("stone"));
+        this.world = Stubs.world(this.writes);
+    }
+
+    /**
+     * Only the rasterizing, counting the blocks emitted.
+     */
+    @Benchmark
+    public long makeSphere() {
+        long[] blocks = new long[1];
+        ShapeHelper.makeSphere(CENTER, this.design, this.radius, this.filled,
+                (x, y, minZ, maxZ, state) -> blocks[0] += maxZ - minZ + 1);
+        return blocks[0];
+    }
+
+    /**
+     * Rasterizing, grouping runs by chunk and writing into a stand-in world.
+     */
+    @Benchmark
+    public long makeSphereIntoChunks() {
+        ChunkedBlockWriter writer =
+                new ChunkedBlockWriter(Stubs.CHUNK_SIZE, CLIP_MIN, CLIP_MAX);
+        ShapeHelper.makeSphere(CENTER, this.design, this.radius, this.filled,
+                writer);
+        writer.apply(this.world, true);
+        return this.writes[0];
+    }
+
+}
@@ -0,0 +1,188 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.block.BlockType;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3i;
+
+/**
+ * Stand-ins for the Sponge types the benchmarks touch, so they run without
+ * a server. Only the methods the benchmarked code calls are answered.
+ */
+public final class Stubs {
+
+    public static final Vector3i CHUNK_SIZE = new Vector3i(16, 256, 16);
+    // Vanilla's 30 million block world border, in chunks.
+    public static final Vector3i SPACE_MIN = new Vector3i(-1875000, 0,
+            -1875000);
+    public static final Vector3i SPACE_MAX = new Vector3i(1874999, 0,
+            1874999);
+    public static final Vector3i BLOCK_MIN = SPACE_MIN.mul(CHUNK_SIZE);
+    public static final Vector3i BLOCK_MAX =
+            SPACE_MAX.add(Vector3i.ONE).mul(CHUNK_SIZE).sub(Vector3i.ONE);
+
+    @FunctionalInterface
+    public interface Answer {
+
+        Object answer(String method, Object[] args);
+
+    }
+
+    public static <T> T stub(Class<T> type, Answer answer) {
+        return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(),
+                new Class<?>[] { type }, (proxy, method, args) -> {
+                    if (method.getDeclaringClass() == Object.class) {
+                        switch (method.getName()) {
+                            case "equals":
+                                return proxy == args[0];
+                            case "hashCode":
+                                return System.identityHashCode(proxy);
+                            default:
+                                return type.getSimpleName() + " stub";
+                        }
+                    }
+                    return answer.answer(method.getName(),
+                            args == null ? new Object[0] : args);
+                }));
+    }
+
+    private static UnsupportedOperationException unsupported(String method) {
+        return new UnsupportedOperationException(method);
+    }
+
+    public static BlockType blockType(String id) {
+        BlockState state = stub(BlockState.class, (method, args) -> {
+            throw unsupported(method);
+        });
+        return stub(BlockType.class, (method, args) -> {
+            switch (method) {
+                case "getDefaultState":
+                    return state;
+                case "getId":
+                case "getName":
+                    return id;
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    /**
+     * A layout of 16x256x16 chunks, like a vanilla server's.
+     */
+    public static ChunkLayout chunkLayout() {
+        return stub(ChunkLayout.class, (method, args) -> {
+            switch (method) {
+                case "getChunkSize":
+                    return CHUNK_SIZE;
+                case "getSpaceMin":
+                    return SPACE_MIN;
+                case "getSpaceMax":
+                    return SPACE_MAX;
+                case "forceToChunk":
+                    return toChunk(args);
+                case "toChunk":
+                    Vector3i chunk = toChunk(args);
+                    return chunk.min(SPACE_MIN).equals(SPACE_MIN)
+                            && chunk.max(SPACE_MAX).equals(SPACE_MAX)
+                                    ? Optional.of(chunk) : Optional.empty();
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    private static Vector3i toChunk(Object[] args) {
+        Vector3i pos = args.length == 1 ? (Vector3i) args[0]
+                : new Vector3i((int) args[0], (int) args[1], (int) args[2]);
+        return new Vector3i(Math.floorDiv(pos.getX(), CHUNK_SIZE.getX()),
+                Math.floorDiv(pos.getY(), CHUNK_SIZE.getY()),
+                Math.floorDiv(pos.getZ(), CHUNK_SIZE.getZ()));
+    }
+
+    /**
+     * A world where every chunk is loaded and block writes only bump
+     * {@code writes[0]}. Chunks are made on first use and kept.
+     */
+    public static World world(long[] writes) {
+        UUID id = UUID.randomUUID();
+        Map<Vector3i, Optional<Chunk>> chunks = new HashMap<>();
+        World[] world = new World[1];
+        world[0] = stub(World.class, (method, args) -> {
+            switch (method) {
+                case "getUniqueId":
+                    return id;
+                case "getBlockMin":
+                    return BLOCK_MIN;
+                case "getBlockMax":
+                    return BLOCK_MAX;
+                case "getChunk":
+                case "loadChunk":
+                    return chunks.computeIfAbsent((Vector3i) args[0],
+                            pos -> Optional.of(chunk(world[0], pos, writes)));
+                default:
+                    throw unsupported(method);
+            }
+        });
+        return world[0];
+    }
+
+    private static Chunk chunk(World world, Vector3i pos, long[] writes) {
+        Vector3i min = pos.mul(CHUNK_SIZE);
+        Vector3i max = min.add(CHUNK_SIZE).sub(Vector3i.ONE);
+        return stub(Chunk.class, (method, args) -> {
+            switch (method) {
+                case "setBlock":
+                    writes[0]++;
+                    return null;
+                case "getWorld":
+                    return world;
+                case "getPosition":
+                    return pos;
+                case "getBlockMin":
+                    return min;
+                case "getBlockMax":
+                    return max;
+                default:
+                    throw unsupported(method);
+            }
+        });
+    }
+
+    private Stubs() {
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.util.Filter;
+import me.kenzierocks.plugins.planetesimals.util.VectorHelper;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VolumeBenchmark {
+
+    @Param({ "16", "64" })
+    public int size;
+
+    @Param({ "false", "true" })
+    public boolean filtered;
+
+    private Vector3i min;
+    private Vector3i max;
+    private Filter filter;
+
+    @Setup
+    public void setUp() {
+        this.min = new Vector3i(-this.size / 2, 0, -this.size / 2);
+        this.max = this.min.add(this.size - 1, this.size - 1, this.size - 1);
+        this.filter = this.filtered ? Filter.x(x -> (x & 1) == 0)
+                .z(z -> z % 3 != 0).build() : Filter.NONE;
+    }
+
+    @Benchmark
+    public void loopVolume(Blackhole hole) {
+        VectorHelper.loopVolume(this.min, this.max, this.filter,
+                hole::consume);
+    }
+
+    @Benchmark
+    public void forEachInVolume(Blackhole hole) {
+        VectorHelper.forEachInVolume(this.min, this.max, this.filter,
+                (x, y, z) -> hole.consume(x + y + z));
+    }
+
+    @Benchmark
+    public int streamVolume() {
+        return VectorHelper.streamVolume(this.min, this.max, this.filter,
+                Vector3i::getY).mapToInt(Integer::intValue).sum();
+    }
+
+    @Benchmark
+    public int streamVolumeParallel() {
+        return StreamSupport.stream(VectorHelper.spliterateVolume(this.min,
+                this.max, this.filter), true).mapToInt(Vector3i::getY).sum();
+    }
+
+}
@@ -27,27 +27,56 @@ package me.kenzierocks.plugins.planetesimals;
 import static org.jooq.impl.DSL.field;
 import static org.jooq.impl.DSL.getDataType;
 import static org.jooq.impl.DSL.name;
+import static org.jooq.impl.DSL.param;
 import static org.jooq.impl.DSL.table;
 import static org.jooq.impl.DSL.using;
 
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
+import javax.annotation.Nullable;
 import javax.sql.DataSource;
 
+import org.h2.jdbcx.JdbcConnectionPool;
 import org.jooq.DSLContext;
 import org.jooq.Field;
+import org.jooq.InsertValuesStep8;
 import org.jooq.Name;
 import org.jooq.Record;
+import org.jooq.Record2;
 import org.jooq.SQLDialect;
 import org.jooq.Table;
-import org.spongepowered.api.Sponge;
-import org.spongepowered.api.service.sql.SqlService;
+import org.jooq.exception.DataAccessException;
+import org.jooq.impl.DSL;
+import org.slf4j.Logger;
 
-public class Database {
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableList;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetStorage;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.StoredPlanet;
+
+public class Database implements PlanetStorage {
 
     // private static final String DB_NAME = "planetesimals";
     private static final Name PLANETS_TABLE_NAME = name("planets");
     public static final Table<Record> PLANETS_TABLE = table(PLANETS_TABLE_NAME);
+    public static final Field<Long> PLANET_ID_FIELD =
+            field(name("id"), Long.class);
+    public static final Field<UUID> WORLD_FIELD =
+            field(name("world"), UUID.class);
     public static final Field<Integer> CHUNK_X_FIELD =
             field(name("cx"), Integer.class);
     public static final Field<Integer> CHUNK_Y_FIELD =
@@ -63,25 +92,103 @@ public class Database {
     public static final Field<Integer> PLANET_RADIUS_FIELD =
             field(name("radius"), Integer.class);
 
-    private DataSource data;
+    private static final Table<Record> SCHEMA_TABLE =
+            table(name("schema_version"));
+    private static final Field<Integer> SCHEMA_VERSION_FIELD =
+            field(name("version"), Integer.class);
+    private static final Table<Record> BACKFILL_TABLE =
+            table(name("schema_backfill"));
+    private static final Field<Long> BACKFILL_LAST_ID_FIELD =
+            field(name("last_id"), Long.class);
+    private static final int WORLD_BACKFILL_BATCH = 4096;
+    private static final int INSERT_ROWS = 256;
+
+    private final Logger logger;
+    private final Executor background;
+    private final Supplier<UUID> legacyWorld;
+    @Nullable
+    private UUID legacyWorldId;
+    /**
+     * Every schema change, in order. Add new steps to the end and never
+     * change a released one.
+     */
+    private final List<Migration> migrations = ImmutableList.of(
+            Migration.blocking(1, "planet ids and chunk index", db -> {
+                // Existing rows get numbered from the new identity column.
+                db.execute("alter table {0} add column if not exists {1}"
+                        + " bigint auto_increment before {2}", PLANETS_TABLE,
+                        PLANET_ID_FIELD, CHUNK_X_FIELD);
+                db.execute("alter table {0} add constraint if not exists {1}"
+                        + " primary key ({2})", PLANETS_TABLE,
+                        name("planets_pk"), PLANET_ID_FIELD);
+                db.execute("create index if not exists {0} on {1} ({2}, {3},"
+                        + " {4})", name("planets_chunk"), PLANETS_TABLE,
+                        CHUNK_X_FIELD, CHUNK_Y_FIELD, CHUNK_Z_FIELD);
+            }),
+            // Rows from before this are given a world by migration 4.
+            Migration.blocking(2, "planet world column", db -> {
+                db.execute("alter table {0} add column if not exists {1}"
+                        + " uuid before {2}", PLANETS_TABLE, WORLD_FIELD,
+                        CHUNK_X_FIELD);
+            }),
+            Migration.online(3, "world chunk index", db -> {
+                db.execute("create index if not exists {0} on {1} ({2}, {3},"
+                        + " {4}, {5})", name("planets_world_chunk"),
+                        PLANETS_TABLE, WORLD_FIELD, CHUNK_X_FIELD,
+                        CHUNK_Y_FIELD, CHUNK_Z_FIELD);
+                db.execute("drop index if exists {0}", name("planets_chunk"));
+            }),
+            Migration.backfill(4, "planet world backfill", PLANETS_TABLE,
+                    PLANET_ID_FIELD, WORLD_BACKFILL_BATCH,
+                    (db, range) -> db.update(PLANETS_TABLE)
+                            .set(WORLD_FIELD, getLegacyWorld())
+                            .where(WORLD_FIELD.isNull(), range)));
+    private JdbcConnectionPool data;
     private DSLContext db;
+    private String selectPlanetsSql;
+    private final Map<Integer, String> insertSql = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a database that leaves planets from before rows had a world
+     * without one.
+     *
+     * @param background - runs online migrations
+     */
+    public Database(Logger logger, Executor background) {
+        this(logger, background, () -> null);
+    }
+
+    /**
+     * @param background - runs online migrations
+     * @param legacyWorld - gets the world that planets stored before rows
+     *        had a world belong to. Only asked for by online migrations.
+     */
+    public Database(Logger logger, Executor background,
+            Supplier<UUID> legacyWorld) {
+        this.logger = logger;
+        this.background = background;
+        this.legacyWorld = legacyWorld;
+    }
 
-    public void init() {
-        SqlService sql = Sponge.getServiceManager().provide(SqlService.class)
-                .orElseThrow(() -> new IllegalStateException("NoSQL?"));
-        String jdbcUrl = Planetesimals.getInstance().getJDBCUrl();
+    @Nullable
+    private UUID getLegacyWorld() {
+        if (this.legacyWorldId == null) {
+            this.legacyWorldId = this.legacyWorld.get();
+        }
+        return this.legacyWorldId;
+    }
+
+    public void init(String jdbcUrl, int cacheSize, int queryCacheSize,
+            int poolSize) {
         String[] dbParts = jdbcUrl.split(":");
         if (dbParts.length < 2 || !dbParts[1].equals("h2")) {
             throw new IllegalStateException("Not H2. Dunno what to do.");
         }
-        try {
-            this.data = sql.getDataSource(jdbcUrl);
-        } catch (SQLException e) {
-            throw new IllegalStateException("Couldn't load DB", e);
-        }
+        this.data = JdbcConnectionPool.create(
+                withH2Settings(jdbcUrl, cacheSize, queryCacheSize), "", "");
+        this.data.setMaxConnections(poolSize);
         this.db = using(this.data, SQLDialect.H2);
-        if (getDB().meta().getTables().stream().noneMatch(
-                t -> t.getName().equalsIgnoreCase(PLANETS_TABLE.getName()))) {
+        if (!hasTable(PLANETS_TABLE)) {
             getDB().createTable(PLANETS_TABLE)
                     .column(CHUNK_X_FIELD, getDataType(Integer.class))
                     .column(CHUNK_Y_FIELD, getDataType(Integer.class))
@@ -92,6 +199,271 @@ public class Database {
                     .column(PLANET_RADIUS_FIELD, getDataType(Integer.class))
                     .execute();
         }
+        migrate();
+        prepareQueries();
+    }
+
+    private static String withH2Settings(String jdbcUrl, int cacheSize,
+            int queryCacheSize) {
+        String upper = jdbcUrl.toUpperCase(Locale.ENGLISH);
+        StringBuilder url = new StringBuilder(jdbcUrl);
+        if (!upper.contains(";CACHE_SIZE=")) {
+            url.append(";CACHE_SIZE=").append(cacheSize);
+        }
+        if (!upper.contains(";QUERY_CACHE_SIZE=")) {
+            url.append(";QUERY_CACHE_SIZE=").append(queryCacheSize);
+        }
+        return url.toString();
+    }
+
+    /**
+     * Renders the hot queries once. H2 keeps parsed statements per
+     * connection, and pooled connections keep their session, so running
+     * these only costs binding and executing.
+     */
+    private void prepareQueries() {
+        this.selectPlanetsSql = getDB()
+                .select(CHUNK_X_FIELD, CHUNK_Y_FIELD, CHUNK_Z_FIELD,
+                        PLANET_X_FIELD, PLANET_Y_FIELD, PLANET_Z_FIELD,
+                        PLANET_RADIUS_FIELD)
+                .from(PLANETS_TABLE)
+                .where(WORLD_FIELD.equal(param("world", UUID.class)),
+                        CHUNK_X_FIELD.between(param("minX", Integer.class),
+                        param("maxX", Integer.class)),
+                        CHUNK_Y_FIELD.between(param("minY", Integer.class),
+                                param("maxY", Integer.class)),
+                        CHUNK_Z_FIELD.between(param("minZ", Integer.class),
+                                param("maxZ", Integer.class)))
+                .getSQL();
+    }
+
+    /**
+     * Gets an insert of {@code rows} planets as one multi-row VALUES list.
+     * Rendered once per row count, which is nearly always a full batch.
+     */
+    private String getInsertSql(int rows) {
+        return this.insertSql.computeIfAbsent(rows, count -> {
+            InsertValuesStep8<Record, UUID, Integer, Integer, Integer,
+                    Integer, Integer, Integer, Integer> insert = getDB()
+                            .insertInto(PLANETS_TABLE, WORLD_FIELD,
+                                    CHUNK_X_FIELD, CHUNK_Y_FIELD,
+                                    CHUNK_Z_FIELD, PLANET_X_FIELD,
+                                    PLANET_Y_FIELD, PLANET_Z_FIELD,
+                                    PLANET_RADIUS_FIELD);
+            for (int i = 0; i < count; i++) {
+                insert = insert.values(param("world", UUID.class),
+                        param("cx", Integer.class), param("cy", Integer.class),
+                        param("cz", Integer.class), param("x", Integer.class),
+                        param("y", Integer.class), param("z", Integer.class),
+                        param("radius", Integer.class));
+            }
+            return insert.getSQL();
+        });
+    }
+
+    @Override
+    public void selectPlanets(UUID world, Vector3i minChunk, Vector3i maxChunk,
+            PlanetRowHandler handler) {
+        try (
+                Connection conn = this.data.getConnection();
+                PreparedStatement select =
+                        conn.prepareStatement(this.selectPlanetsSql)) {
+            select.setObject(1, world);
+            select.setInt(2, minChunk.getX());
+            select.setInt(3, maxChunk.getX());
+            select.setInt(4, minChunk.getY());
+            select.setInt(5, maxChunk.getY());
+            select.setInt(6, minChunk.getZ());
+            select.setInt(7, maxChunk.getZ());
+            try (
+                    ResultSet rows = select.executeQuery()) {
+                while (rows.next()) {
+                    handler.handle(rows.getInt(1), rows.getInt(2),
+                            rows.getInt(3), rows.getInt(4), rows.getInt(5),
+                            rows.getInt(6), rows.getInt(7));
+                }
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException("Couldn't select planets", e);
+        }
+    }
+
+    /**
+     * Inserts all of the given planets in one transaction, up to
+     * {@link #INSERT_ROWS} per statement.
+     */
+    @Override
+    public void insertPlanets(Collection<StoredPlanet> planets) {
+        List<StoredPlanet> rows = ImmutableList.copyOf(planets);
+        try (
+                Connection conn = this.data.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (int from = 0; from < rows.size(); from += INSERT_ROWS) {
+                    insertRows(conn, rows.subList(from,
+                            Math.min(rows.size(), from + INSERT_ROWS)));
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            throw new DataAccessException(
+                    "Couldn't insert " + planets.size() + " planets", e);
+        }
+    }
+
+    private void insertRows(Connection conn, List<StoredPlanet> rows)
+            throws SQLException {
+        try (
+                PreparedStatement insert =
+                        conn.prepareStatement(getInsertSql(rows.size()))) {
+            int index = 1;
+            for (StoredPlanet stored : rows) {
+                Vector3i chunk = stored.getChunk();
+                Vector3i pos = stored.getPlanet().getPosition();
+                insert.setObject(index++, stored.getWorld());
+                insert.setInt(index++, chunk.getX());
+                insert.setInt(index++, chunk.getY());
+                insert.setInt(index++, chunk.getZ());
+                insert.setInt(index++, pos.getX());
+                insert.setInt(index++, pos.getY());
+                insert.setInt(index++, pos.getZ());
+                insert.setInt(index++, stored.getPlanet().getRadius());
+            }
+            insert.executeUpdate();
+        }
+    }
+
+    @Override
+    public void clear() {
+        getDB().truncate(PLANETS_TABLE).execute();
+    }
+
+    @Override
+    public void close() {
+        if (this.data != null) {
+            this.data.dispose();
+        }
+    }
+
+    private boolean hasTable(Table<?> table) {
+        return getDB().meta().getTables().stream()
+                .anyMatch(t -> t.getName().equalsIgnoreCase(table.getName()));
+    }
+
+    /**
+     * Applies pending migrations in version order. Blocking migrations run
+     * now, up to the first pending online one; that one and everything
+     * after it run in order on a background thread. If a blocking migration
+     * is among them, they all run now instead, as it can't wait and may
+     * depend on the online ones before it. The schema table holds one row
+     * per applied version.
+     */
+    private void migrate() {
+        if (!hasTable(SCHEMA_TABLE)) {
+            getDB().createTable(SCHEMA_TABLE)
+                    .column(SCHEMA_VERSION_FIELD, getDataType(Integer.class))
+                    .execute();
+        }
+        if (!hasTable(BACKFILL_TABLE)) {
+            getDB().createTable(BACKFILL_TABLE)
+                    .column(SCHEMA_VERSION_FIELD, getDataType(Integer.class))
+                    .column(BACKFILL_LAST_ID_FIELD, getDataType(Long.class))
+                    .execute();
+        }
+        Set<Integer> applied = getDB().select(SCHEMA_VERSION_FIELD)
+                .from(SCHEMA_TABLE).fetchSet(SCHEMA_VERSION_FIELD);
+        int latest =
+                this.migrations.get(this.migrations.size() - 1).getVersion();
+        applied.stream().filter(v -> v > latest).findAny().ifPresent(v -> {
+            throw new IllegalStateException("Database schema version " + v
+                    + " is newer than this plugin supports (" + latest + ")");
+        });
+        List<Migration> pending = new ArrayList<>();
+        for (Migration migration : this.migrations) {
+            if (!applied.contains(migration.getVersion())) {
+                pending.add(migration);
+            }
+        }
+        int firstOnline = 0;
+        while (firstOnline < pending.size()
+                && !pending.get(firstOnline).isOnline()) {
+            apply(pending.get(firstOnline++));
+        }
+        List<Migration> later = pending.subList(firstOnline, pending.size());
+        if (later.isEmpty()) {
+            return;
+        }
+        if (later.stream().anyMatch(migration -> !migration.isOnline())) {
+            this.logger.warn("Running online database migrations now, as"
+                    + " blocking migrations come after them");
+            later.forEach(this::apply);
+            return;
+        }
+        List<Migration> online = ImmutableList.copyOf(later);
+        this.background.execute(() -> {
+            try {
+                online.forEach(this::apply);
+            } catch (DataAccessException e) {
+                this.logger.error(
+                        "Online migration failed, will retry on next start",
+                        e);
+            }
+        });
+    }
+
+    private void apply(Migration migration) {
+        this.logger.info("Applying database migration " + migration.getVersion()
+                        + ": " + migration.getDescription());
+        Migration.Backfill backfill = migration.getBackfill();
+        if (backfill != null) {
+            backfill(migration.getVersion(), backfill);
+            return;
+        }
+        getDB().transaction(config -> {
+            DSLContext db = using(config);
+            migration.getStep().apply(db);
+            db.insertInto(SCHEMA_TABLE, SCHEMA_VERSION_FIELD)
+                    .values(migration.getVersion()).execute();
+        });
+    }
+
+    private void backfill(int version, Migration.Backfill backfill) {
+        Field<Long> id = backfill.getIdField();
+        Record2<Long, Long> bounds = getDB().select(DSL.min(id), DSL.max(id))
+                .from(backfill.getTable()).fetchOne();
+        Long saved = getDB().select(BACKFILL_LAST_ID_FIELD)
+                .from(BACKFILL_TABLE)
+                .where(SCHEMA_VERSION_FIELD.equal(version))
+                .fetchOne(BACKFILL_LAST_ID_FIELD);
+        long last = saved != null ? saved
+                : bounds.value1() != null ? bounds.value1() - 1 : 0;
+        long max = bounds.value2() != null ? bounds.value2() : last;
+        while (last < max) {
+            long from = last;
+            long to = Math.min(max, from + backfill.getBatchSize());
+            getDB().transaction(config -> {
+                DSLContext db = using(config);
+                backfill.getUpdate()
+                        .apply(db, id.greaterThan(from).and(id.lessOrEqual(to)))
+                        .execute();
+                db.mergeInto(BACKFILL_TABLE, SCHEMA_VERSION_FIELD,
+                        BACKFILL_LAST_ID_FIELD).key(SCHEMA_VERSION_FIELD)
+                        .values(version, to).execute();
+            });
+            last = to;
+        }
+        getDB().transaction(config -> {
+            DSLContext db = using(config);
+            db.deleteFrom(BACKFILL_TABLE)
+                    .where(SCHEMA_VERSION_FIELD.equal(version)).execute();
+            db.insertInto(SCHEMA_TABLE, SCHEMA_VERSION_FIELD).values(version)
+                    .execute();
+        });
     }
 
     public DataSource getData() {
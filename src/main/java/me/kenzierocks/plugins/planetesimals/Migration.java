@@ -0,0 +1,131 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals;
+
+import java.util.function.BiFunction;
+
+import javax.annotation.Nullable;
+
+import org.jooq.Condition;
+import org.jooq.DSLContext;
+import org.jooq.Field;
+import org.jooq.Query;
+import org.jooq.Table;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * A single step of the database schema. Each step runs in one transaction
+ * with its version record, but H2 commits schema changes on its own, so
+ * steps must still be safe to run again if the server stops before the step
+ * is recorded as applied.
+ */
+@AutoValue
+public abstract class Migration {
+
+    public interface Step {
+
+        void apply(DSLContext db);
+
+    }
+
+    /**
+     * An update run over a table in ranges of ids, each range in its own
+     * transaction, so the table is never locked for long. The last id done
+     * is saved with each range, so a stopped backfill carries on from
+     * there.
+     */
+    @AutoValue
+    public abstract static class Backfill {
+
+        Backfill() {
+        }
+
+        public abstract Table<?> getTable();
+
+        public abstract Field<Long> getIdField();
+
+        public abstract int getBatchSize();
+
+        /**
+         * Makes the update of the rows matching the given id range.
+         */
+        public abstract BiFunction<DSLContext, Condition, Query> getUpdate();
+
+    }
+
+    /**
+     * Creates a migration that must finish before the plugin uses the
+     * database.
+     */
+    public static Migration blocking(int version, String description,
+            Step step) {
+        return new AutoValue_Migration(version, description, false, step,
+                null);
+    }
+
+    /**
+     * Creates a migration that runs on a background thread once the server
+     * is up, such as building an index. Nothing may depend on an online
+     * migration having finished, except later migrations.
+     */
+    public static Migration online(int version, String description,
+            Step step) {
+        return new AutoValue_Migration(version, description, true, step,
+                null);
+    }
+
+    /**
+     * Creates an online migration that runs {@code update} over
+     * {@code table} in ranges of {@code batchSize} ids. Rows added after it
+     * starts aren't visited, so they must not need it.
+     */
+    public static Migration backfill(int version, String description,
+            Table<?> table, Field<Long> idField, int batchSize,
+            BiFunction<DSLContext, Condition, Query> update) {
+        return new AutoValue_Migration(version, description, true, null,
+                new AutoValue_Migration_Backfill(table, idField, batchSize,
+                        update));
+    }
+
+    Migration() {
+    }
+
+    public abstract int getVersion();
+
+    public abstract String getDescription();
+
+    public abstract boolean isOnline();
+
+    /**
+     * Gets the step, or {@code null} for a backfill.
+     */
+    @Nullable
+    public abstract Step getStep();
+
+    @Nullable
+    public abstract Backfill getBackfill();
+
+}
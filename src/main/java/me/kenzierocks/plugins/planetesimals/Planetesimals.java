@@ -27,6 +27,15 @@ package me.kenzierocks.plugins.planetesimals;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.spongepowered.api.Sponge;
@@ -34,20 +43,41 @@ import org.spongepowered.api.config.ConfigDir;
 import org.spongepowered.api.config.DefaultConfig;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.game.state.GamePreInitializationEvent;
+import org.spongepowered.api.event.game.state.GameStartedServerEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
+import org.spongepowered.api.event.world.SaveWorldEvent;
+import org.spongepowered.api.event.world.UnloadWorldEvent;
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.scheduler.SpongeExecutorService;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.gen.WorldGeneratorModifier;
+import org.spongepowered.api.world.storage.WorldProperties;
 
 import com.google.inject.Inject;
 
 import me.kenzierocks.plugins.planetesimals.commands.CommandManager;
+import me.kenzierocks.plugins.planetesimals.worldgen.GenerationMetrics;
+import me.kenzierocks.plugins.planetesimals.worldgen.ParallelVoxelizer;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetApplyQueue;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetContext;
 import me.kenzierocks.plugins.planetesimals.worldgen.PlanetGenerator;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetPlanner;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetPopulator;
+import me.kenzierocks.plugins.planetesimals.worldgen.PlanetStyle;
+import me.kenzierocks.plugins.planetesimals.worldgen.Pregenerator;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.ChunkOccupancy;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetIndex;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetStorage;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetWriter;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PopulatedChunks;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.RegionPlanetStorage;
 import ninja.leaping.configurate.commented.CommentedConfigurationNode;
 import ninja.leaping.configurate.loader.ConfigurationLoader;
 
 @Plugin(id = Planetesimals.ID, name = Planetesimals.NAME,
         version = Planetesimals.VERSION)
-public final class Planetesimals {
+public final class Planetesimals implements PlanetContext {
 
     // TODO make an AP to replace at runtime
     // public static final String ID = "@ID@";
@@ -71,18 +101,42 @@ public final class Planetesimals {
     @Inject
     @DefaultConfig(sharedRoot = false)
     private ConfigurationLoader<CommentedConfigurationNode> config;
+    private CommentedConfigurationNode configRoot;
 
     {
         INSTANCE = this;
     }
 
     private SpongeExecutorService executor;
-    private Database database = new Database();
+    private Database database;
+    private PlanetStorage planetStorage;
+    private Map<UUID, PlanetIndex> planetIndexes = new ConcurrentHashMap<>();
+    private Map<UUID, PopulatedChunks> populatedChunks =
+            new ConcurrentHashMap<>();
+    private PlanetWriter planetWriter;
+    private ParallelVoxelizer voxelizer;
+    private PlanetApplyQueue applyQueue;
+    private PlanetPlanner planner;
+    private Map<UUID, Pregenerator> pregenerators = new ConcurrentHashMap<>();
+    private final GenerationMetrics metrics = new GenerationMetrics();
+    private final CompletableFuture<Void> serverStarted =
+            new CompletableFuture<>();
 
+    @Override
     public Logger getLogger() {
         return this.logger;
     }
 
+    @Override
+    public GenerationMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    @Override
+    public ChunkLayout getChunkLayout() {
+        return Sponge.getServer().getChunkLayout();
+    }
+
     public SpongeExecutorService getExecutor() {
         if (this.executor == null) {
             this.executor = Sponge.getScheduler().createSyncExecutor(this);
@@ -94,6 +148,113 @@ public final class Planetesimals {
         return this.database;
     }
 
+    public PlanetStorage getPlanetStorage() {
+        return this.planetStorage;
+    }
+
+    @Override
+    public PlanetIndex getPlanetIndex(World world) {
+        return this.planetIndexes.computeIfAbsent(world.getUniqueId(),
+                id -> new PlanetIndex(this.planetStorage, this.planetWriter,
+                        id,
+                        new ChunkOccupancy(this.planetStorage, id,
+                                getOccupancyDir().resolve(id.toString()),
+                                getChunkLayout().getChunkSize(),
+                                PlanetPopulator.MAX_RADIUS,
+                                getOccupancyCacheRegions()),
+                        getIndexCacheChunks(), this.metrics));
+    }
+
+    public void clearPlanetIndexes() {
+        this.planetIndexes.values().forEach(PlanetIndex::clear);
+        this.planetIndexes.clear();
+        ChunkOccupancy.delete(getOccupancyDir());
+    }
+
+    /**
+     * Where chunk occupancy bitmaps are saved, next to the H2 file.
+     */
+    public Path getOccupancyDir() {
+        return this.configDir.resolve("occupancy");
+    }
+
+    @Override
+    public PopulatedChunks getPopulatedChunks(World world) {
+        return this.populatedChunks.computeIfAbsent(world.getUniqueId(),
+                id -> new PopulatedChunks(
+                        getPopulatedDir().resolve(id.toString()),
+                        getOccupancyCacheRegions()));
+    }
+
+    /**
+     * Where the bitmaps of populated chunks are saved. Unlike occupancy,
+     * these describe the world rather than the database, so emptying the
+     * database leaves them.
+     */
+    public Path getPopulatedDir() {
+        return this.configDir.resolve("populated");
+    }
+
+    @Override
+    public PlanetWriter getPlanetWriter() {
+        return this.planetWriter;
+    }
+
+    @Override
+    public ParallelVoxelizer getVoxelizer() {
+        return this.voxelizer;
+    }
+
+    @Override
+    public PlanetApplyQueue getApplyQueue() {
+        return this.applyQueue;
+    }
+
+    /**
+     * Gets the shared planner, starting it on first use.
+     */
+    public synchronized PlanetPlanner getPlanner() {
+        if (this.planner == null) {
+            this.planner = new PlanetPlanner(
+                    new PlanetPopulator(this, getPlanetStyle(),
+                            isChunkLocalWrites(), getParallelVoxelizeRadius()),
+                    getPlanRadius(), getPlannerThreads());
+            this.planner.start(this);
+        }
+        return this.planner;
+    }
+
+    public Path getPregenDir() {
+        return this.configDir.resolve("pregen");
+    }
+
+    /**
+     * Gets the pregen run of {@code world}, loading saved progress if it
+     * isn't known yet.
+     */
+    public Optional<Pregenerator> getPregenerator(World world) {
+        Pregenerator pregen = this.pregenerators.get(world.getUniqueId());
+        if (pregen == null) {
+            Optional<Pregenerator> saved =
+                    Pregenerator.load(getPregenDir(), world);
+            saved.ifPresent(this::setPregenerator);
+            return saved;
+        }
+        return Optional.of(pregen);
+    }
+
+    public void setPregenerator(Pregenerator pregen) {
+        Pregenerator old = this.pregenerators
+                .put(pregen.getWorld().getUniqueId(), pregen);
+        if (old != null && old != pregen) {
+            old.pause();
+        }
+    }
+
+    public void startPregenerator(Pregenerator pregen) {
+        pregen.start(this, getPregenWindow(), getPregenBudgetMillis());
+    }
+
     @Listener
     public void onGamePreInitialization(GamePreInitializationEvent event) {
         this.logger.info("Loading " + NAME + " v" + VERSION);
@@ -103,37 +264,375 @@ public final class Planetesimals {
             throw new RuntimeException("Cannot use the plugin with no configs!",
                     e);
         }
-        this.database.init();
+        // Online migrations wait for the server, since the world backfill
+        // needs its worlds.
+        this.database = new Database(this.logger,
+                task -> this.serverStarted.thenRun(() -> Sponge.getScheduler()
+                        .createTaskBuilder().async()
+                        .name("Planetesimals online migrations")
+                        .execute(task).submit(this)),
+                this::getLegacyPlanetWorld);
+        String storage = getStorageType();
+        if (storage.equals("region")) {
+            this.planetStorage =
+                    new RegionPlanetStorage(this.configDir.resolve("regions"));
+        } else if (storage.equals("jdbc")) {
+            this.database.init(getJDBCUrl(), getH2CacheSize(),
+                    getH2QueryCacheSize(), getPoolSize());
+            this.planetStorage = this.database;
+        } else {
+            throw new IllegalStateException("Unknown storage " + storage);
+        }
+        this.planetWriter = new PlanetWriter(this.planetStorage, this.logger);
+        this.planetWriter.start();
+        this.voxelizer = new ParallelVoxelizer(getVoxelizerThreads());
+        this.applyQueue = new PlanetApplyQueue(getApplyBudgetMillis(),
+                this.metrics.getBlockWrites());
+        this.applyQueue.start(this);
+        int statsInterval = getStatsLogInterval();
+        if (statsInterval > 0) {
+            Sponge.getScheduler().createTaskBuilder().async()
+                    .name("Planetesimals stats digest")
+                    .interval(statsInterval, TimeUnit.SECONDS)
+                    .delay(statsInterval, TimeUnit.SECONDS)
+                    .execute(this::logStats).submit(this);
+        }
         CommandManager.addCommands(this);
         Sponge.getRegistry().register(WorldGeneratorModifier.class,
                 PlanetGenerator.INSTANCE);
         this.logger.info("Loaded " + NAME + " v" + VERSION);
     }
 
+    /**
+     * Picks the world that planets stored before rows had a world belong
+     * to: the only planet world if there is just one, otherwise the default
+     * world.
+     */
+    private UUID getLegacyPlanetWorld() {
+        List<WorldProperties> planetWorlds = Sponge.getServer()
+                .getAllWorldProperties().stream()
+                .filter(props -> props.getGeneratorModifiers()
+                        .contains(PlanetGenerator.INSTANCE))
+                .collect(Collectors.toList());
+        WorldProperties world = planetWorlds.size() == 1 ? planetWorlds.get(0)
+                : Sponge.getServer().getDefaultWorld()
+                        .orElseThrow(() -> new IllegalStateException(
+                                "No world for planets without one"));
+        this.logger.info("Planets stored without a world belong to "
+                + world.getWorldName());
+        return world.getUniqueId();
+    }
+
+    private void logStats() {
+        if (this.metrics.getBlockWrites().getCount() == 0) {
+            return;
+        }
+        this.logger.info("Generation stats:");
+        this.metrics.digest().forEach(line -> this.logger.info("  " + line));
+    }
+
+    @Listener
+    public void onServerStarted(GameStartedServerEvent event) {
+        this.serverStarted.complete(null);
+        // Pick up runs that were going when the server stopped.
+        for (World world : Sponge.getServer().getWorlds()) {
+            getPregenerator(world).filter(Pregenerator::isRunning)
+                    .ifPresent(pregen -> {
+                        this.logger.info("Resuming " + pregen.getStatus());
+                        startPregenerator(pregen);
+                    });
+        }
+    }
+
+    @Listener
+    public void onWorldSave(SaveWorldEvent event) {
+        // Storage may be slow or retrying, so don't wait on it here.
+        this.planetWriter.requestFlush();
+        PlanetIndex index =
+                this.planetIndexes.get(event.getTargetWorld().getUniqueId());
+        if (index != null) {
+            index.getOccupancy().flush();
+        }
+    }
+
+    @Listener
+    public void onWorldUnload(UnloadWorldEvent event) {
+        // Anything still queued would be missing if the world loads again.
+        this.planetWriter.flush();
+        UUID world = event.getTargetWorld().getUniqueId();
+        PlanetIndex index = this.planetIndexes.remove(world);
+        if (index != null) {
+            index.getOccupancy().close();
+        }
+        this.populatedChunks.remove(world);
+        Pregenerator pregen = this.pregenerators.remove(world);
+        if (pregen != null) {
+            pregen.stop();
+        }
+    }
+
+    @Listener
+    public void onGameStopping(GameStoppingServerEvent event) {
+        this.pregenerators.values().forEach(Pregenerator::stop);
+        synchronized (this) {
+            if (this.planner != null) {
+                this.planner.stop();
+            }
+        }
+        // Let planets being drawn finish, then write them out.
+        this.voxelizer.close();
+        this.applyQueue.stop();
+        this.planetWriter.stop();
+        this.planetIndexes.values()
+                .forEach(index -> index.getOccupancy().close());
+        this.planetStorage.close();
+    }
+
     public Path getConfigDir() {
         return this.configDir;
     }
 
-    public String getJDBCUrl() {
-        CommentedConfigurationNode root;
-        try {
-            root = this.config.load();
-        } catch (IOException e) {
-            throw new IllegalStateException("Cannot load configuration.", e);
+    private CommentedConfigurationNode getConfigRoot() {
+        if (this.configRoot == null) {
+            try {
+                this.configRoot = this.config.load();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot load configuration.",
+                        e);
+            }
         }
-        CommentedConfigurationNode jdbc = root.getNode("jdbc");
-        jdbc.setComment("The JDBC url. Leave as H2 for now.");
-        String url = jdbc.getString("jdbc:h2:"
-                + this.configDir.resolve("chunks.h2").toAbsolutePath());
-        jdbc.setValue(url);
+        return this.configRoot;
+    }
+
+    private CommentedConfigurationNode getConfigNode(String key,
+            String comment) {
+        CommentedConfigurationNode node = getConfigRoot().getNode(key);
+        node.setComment(comment);
+        return node;
+    }
+
+    private void saveConfig() {
         try {
-            this.config.save(root);
+            this.config.save(getConfigRoot());
         } catch (IOException e) {
             // NOT FATAL. WE CAN CONTINUE.
             this.logger.warn("Didn't save config",
                     new IllegalStateException("Cannot save configuration.", e));
         }
+    }
+
+    public String getJDBCUrl() {
+        CommentedConfigurationNode jdbc =
+                getConfigNode("jdbc", "The JDBC url. Leave as H2 for now.");
+        String url = jdbc.getString("jdbc:h2:"
+                + this.configDir.resolve("chunks.h2").toAbsolutePath());
+        jdbc.setValue(url);
+        saveConfig();
         return url;
     }
 
+    public String getStorageType() {
+        CommentedConfigurationNode storage = getConfigNode("storage",
+                "Where planets are kept: jdbc for the database at the jdbc"
+                        + " url, region for region files in the config"
+                        + " directory.");
+        String type = storage.getString("jdbc");
+        storage.setValue(type);
+        saveConfig();
+        return type;
+    }
+
+    public PlanetStyle getPlanetStyle() {
+        CommentedConfigurationNode style = getConfigNode("planet-style",
+                "How planets are filled: solid, hollow (a stone shell) or"
+                        + " layered (crust, mantle and core).");
+        String name = style.getString("solid");
+        style.setValue(name);
+        saveConfig();
+        try {
+            return PlanetStyle.valueOf(name.toUpperCase(Locale.ENGLISH));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Unknown planet style " + name,
+                    e);
+        }
+    }
+
+    public boolean isChunkLocalWrites() {
+        CommentedConfigurationNode chunkLocal = getConfigNode(
+                "chunk-local-writes",
+                "Only write planets into the chunk being populated,"
+                        + " drawing the rest as their chunks populate."
+                        + " Avoids loading neighboring chunks during"
+                        + " generation, but rejects planets that would"
+                        + " reach into an already populated chunk.");
+        boolean value = chunkLocal.getBoolean(false);
+        chunkLocal.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public String getPlacement() {
+        CommentedConfigurationNode placement = getConfigNode("placement",
+                "How planets are placed: 'random' picks spots while"
+                        + " populating and checks them against stored"
+                        + " planets, 'planned' does the same work ahead of"
+                        + " time for chunks near players, 'seeded' derives"
+                        + " them from the world seed so no lookups are"
+                        + " needed.");
+        String value = placement.getString("random");
+        placement.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public boolean isRecordSeededPlanets() {
+        CommentedConfigurationNode record = getConfigNode(
+                "record-seeded-planets",
+                "Also store planets from 'seeded' placement. They can"
+                        + " always be recomputed, so this is only a cache.");
+        boolean value = record.getBoolean(false);
+        record.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getParallelVoxelizeRadius() {
+        CommentedConfigurationNode radius = getConfigNode(
+                "parallel-voxelize-radius",
+                "Planets at least this large are drawn on worker threads"
+                        + " and written into the world over the next ticks."
+                        + " 0 draws every planet immediately.");
+        int value = radius.getInt(0);
+        radius.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getPlanRadius() {
+        CommentedConfigurationNode radius = getConfigNode("plan-radius",
+                "With 'planned' placement, how many chunks around each"
+                        + " player to plan planets for ahead of time.");
+        int value = radius.getInt(8);
+        radius.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getPlannerThreads() {
+        CommentedConfigurationNode threads = getConfigNode("planner-threads",
+                "Worker threads used to plan planets ahead of time.");
+        int value = threads.getInt(2);
+        threads.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getStatsLogInterval() {
+        CommentedConfigurationNode interval = getConfigNode(
+                "stats-log-interval",
+                "Seconds between generation stats digests in the log, or 0"
+                        + " to never log them.");
+        int value = interval.getInt(300);
+        interval.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getIndexCacheChunks() {
+        CommentedConfigurationNode chunks = getConfigNode(
+                "index-cache-chunks",
+                "How many chunks of placed planets to keep in memory per"
+                        + " world for collision checks. Chunks that never"
+                        + " held a planet don't count.");
+        int value = chunks.getInt(65536);
+        chunks.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getOccupancyCacheRegions() {
+        CommentedConfigurationNode regions = getConfigNode(
+                "occupancy-cache-regions",
+                "How many 32x32 chunk regions of the occupancy bitmap to keep"
+                        + " in memory per world. Each takes about 200"
+                        + " bytes.");
+        int value = regions.getInt(4096);
+        regions.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getPregenWindow() {
+        CommentedConfigurationNode window = getConfigNode("pregen-window",
+                "How many chunks pregen keeps loaded at once. Chunks are"
+                        + " only populated once their neighbors are"
+                        + " generated, so pregen keeps at least the last"
+                        + " two rings of the spiral loaded regardless.");
+        int value = window.getInt(1024);
+        window.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getPregenBudgetMillis() {
+        CommentedConfigurationNode budget = getConfigNode("pregen-budget-ms",
+                "Milliseconds per tick spent generating chunks for pregen.");
+        int value = budget.getInt(20);
+        budget.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getVoxelizerThreads() {
+        CommentedConfigurationNode threads = getConfigNode(
+                "voxelizer-threads",
+                "Worker threads used to draw large planets.");
+        int value = threads.getInt(
+                Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        threads.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getApplyBudgetMillis() {
+        CommentedConfigurationNode budget = getConfigNode("apply-budget-ms",
+                "Milliseconds per tick spent writing prepared planets into"
+                        + " the world.");
+        int value = budget.getInt(5);
+        budget.setValue(value);
+        saveConfig();
+        return value;
+    }
+
+    public int getPoolSize() {
+        CommentedConfigurationNode poolSize = getConfigNode("pool-size",
+                "How many database connections to keep open.");
+        int size = poolSize.getInt(4);
+        poolSize.setValue(size);
+        saveConfig();
+        return size;
+    }
+
+    public int getH2CacheSize() {
+        CommentedConfigurationNode cacheSize = getConfigNode("h2-cache-size",
+                "H2 page cache size in KB. Ignored if the JDBC url sets"
+                        + " CACHE_SIZE.");
+        int size = cacheSize.getInt(16384);
+        cacheSize.setValue(size);
+        saveConfig();
+        return size;
+    }
+
+    public int getH2QueryCacheSize() {
+        CommentedConfigurationNode cacheSize =
+                getConfigNode("h2-query-cache-size",
+                        "How many parsed statements H2 keeps per connection."
+                                + " Ignored if the JDBC url sets"
+                                + " QUERY_CACHE_SIZE.");
+        int size = cacheSize.getInt(32);
+        cacheSize.setValue(size);
+        saveConfig();
+        return size;
+    }
+
 }
@@ -31,7 +31,6 @@ import org.spongepowered.api.command.args.CommandContext;
 import org.spongepowered.api.command.args.CommandElement;
 import org.spongepowered.api.command.args.GenericArguments;
 
-import me.kenzierocks.plugins.planetesimals.Database;
 import me.kenzierocks.plugins.planetesimals.Planetesimals;
 
 public class EmptyDBCommand implements Command {
@@ -39,8 +38,9 @@ public class EmptyDBCommand implements Command {
     @Override
     public CommandResult execute(CommandSource src, CommandContext args)
             throws CommandException {
-        Planetesimals.getInstance().getDatabase().getDB()
-                .truncate(Database.PLANETS_TABLE).execute();
+        Planetesimals.getInstance().getPlanetWriter().clear();
+        Planetesimals.getInstance().getPlanetStorage().clear();
+        Planetesimals.getInstance().clearPlanetIndexes();
         return CommandResult.success();
     }
 
@@ -62,6 +62,8 @@ public final class MasterCommand implements Command {
     static {
         addChild(new CreateCommand(), "create", "c");
         addChild(new TPCommand(), "tp");
+        addChild(new PregenCommand(), "pregen");
+        addChild(new StatsCommand(), "stats");
         addHiddenChild(new EmptyDBCommand(), "empty");
     }
 
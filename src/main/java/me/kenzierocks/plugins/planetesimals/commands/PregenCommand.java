@@ -0,0 +1,111 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.commands;
+
+import java.util.Optional;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.args.CommandElement;
+import org.spongepowered.api.command.args.GenericArguments;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.world.World;
+
+import me.kenzierocks.plugins.planetesimals.Planetesimals;
+import me.kenzierocks.plugins.planetesimals.worldgen.Pregenerator;
+
+/**
+ * Runs pregen: {@code <world> <radius>} starts or resumes generating,
+ * {@code -p <world>} pauses it and {@code <world>} shows progress.
+ */
+public class PregenCommand implements Command {
+
+    private static final String WORLD = "world";
+    private static final String RADIUS = "radius";
+    private static final String PAUSE = "p";
+
+    @Override
+    public CommandResult execute(CommandSource src, CommandContext args)
+            throws CommandException {
+        String name = args.<String> getOne(WORLD).get();
+        Optional<World> world = Sponge.getServer().getWorld(name);
+        if (!world.isPresent()) {
+            world = Sponge.getServer().loadWorld(name);
+        }
+        if (!world.isPresent()) {
+            src.sendMessage(Text.of("No such world " + name));
+            return CommandResult.empty();
+        }
+        Planetesimals plugin = Planetesimals.getInstance();
+        Optional<Pregenerator> pregen = plugin.getPregenerator(world.get());
+        Optional<Integer> radius = args.<Integer> getOne(RADIUS);
+        if (args.hasAny(PAUSE)) {
+            if (!pregen.isPresent()) {
+                src.sendMessage(Text.of("No pregen for " + name));
+                return CommandResult.empty();
+            }
+            pregen.get().pause();
+        } else if (radius.isPresent()) {
+            if (!pregen.isPresent() || pregen.get().isDone()
+                    || pregen.get().getRadius() != radius.get()) {
+                pregen = Optional.of(new Pregenerator(plugin.getPregenDir(),
+                        world.get(), radius.get(),
+                        Sponge.getServer().getChunkLayout().forceToChunk(
+                                world.get().getSpawnLocation()
+                                        .getBlockPosition())));
+                plugin.setPregenerator(pregen.get());
+            }
+            plugin.startPregenerator(pregen.get());
+        } else if (!pregen.isPresent()) {
+            src.sendMessage(Text.of("No pregen for " + name));
+            return CommandResult.empty();
+        }
+        src.sendMessage(Text.of(pregen.get().getStatus()));
+        return CommandResult.success();
+    }
+
+    @Override
+    public CommandElement getArguments() {
+        return GenericArguments.flags().flag(PAUSE)
+                .buildWith(GenericArguments.seq(
+                        GenericArguments.string(Text.of(WORLD)),
+                        GenericArguments.optional(
+                                GenericArguments.integer(Text.of(RADIUS)))));
+    }
+
+    @Override
+    public String getStringDescription() {
+        return "Generates the chunks around a world's spawn";
+    }
+
+    @Override
+    public Optional<String> getPermissions() {
+        return Optional.of(Planetesimals.ID + ".pregen");
+    }
+
+}
@@ -0,0 +1,152 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * An open addressing set of primitive {@code long}s, so adding and
+ * checking values never boxes them. Iteration order is unspecified. Not
+ * thread safe.
+ */
+public class LongHashSet {
+
+    private long[] keys;
+    private boolean[] used;
+    private int mask;
+    private int size;
+
+    public LongHashSet() {
+        this(0);
+    }
+
+    /**
+     * @param expected - how many values to make room for up front
+     */
+    public LongHashSet(int expected) {
+        allocate(LongObjectHashMap.tableSize(expected));
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // The slot holding value, or the free slot it would go in.
+    private int slot(long value) {
+        int i = LongObjectHashMap.hash(value) & this.mask;
+        while (this.used[i] && this.keys[i] != value) {
+            i = (i + 1) & this.mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean contains(long value) {
+        return this.used[slot(value)];
+    }
+
+    /**
+     * @return {@code true} if {@code value} wasn't already in the set
+     */
+    public boolean add(long value) {
+        int i = slot(value);
+        if (this.used[i]) {
+            return false;
+        }
+        this.keys[i] = value;
+        this.used[i] = true;
+        this.size++;
+        if (this.size * 2 > this.keys.length) {
+            grow();
+        }
+        return true;
+    }
+
+    /**
+     * @return {@code true} if {@code value} was in the set
+     */
+    public boolean remove(long value) {
+        int free = slot(value);
+        if (!this.used[free]) {
+            return false;
+        }
+        this.used[free] = false;
+        this.size--;
+        // Pull later values of the probe run back into the freed slot.
+        int i = (free + 1) & this.mask;
+        while (this.used[i]) {
+            int ideal = LongObjectHashMap.hash(this.keys[i]) & this.mask;
+            if (((i - ideal) & this.mask) >= ((i - free) & this.mask)) {
+                this.keys[free] = this.keys[i];
+                this.used[free] = true;
+                this.used[i] = false;
+                free = i;
+            }
+            i = (i + 1) & this.mask;
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(this.used, false);
+        this.size = 0;
+    }
+
+    /**
+     * Passes every value to {@code action}. {@code action} must not change
+     * this set.
+     */
+    public void forEach(LongConsumer action) {
+        for (int i = 0; i < this.keys.length; i++) {
+            if (this.used[i]) {
+                action.accept(this.keys[i]);
+            }
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        boolean[] oldUsed = this.used;
+        allocate(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int slot = slot(oldKeys[i]);
+                this.keys[slot] = oldKeys[i];
+                this.used[slot] = true;
+            }
+        }
+    }
+
+}
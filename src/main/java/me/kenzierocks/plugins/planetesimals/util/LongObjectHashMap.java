@@ -0,0 +1,308 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.util;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+import javax.annotation.Nullable;
+
+/**
+ * An open addressing map from primitive {@code long} keys to objects, so
+ * lookups neither box keys nor allocate entries. Entries are linked in
+ * insertion order, or access order if asked for, like a
+ * {@link java.util.LinkedHashMap}, which makes {@link #eldestKey()} the
+ * natural entry to evict. Values can't be {@code null}. Not thread safe.
+ */
+public class LongObjectHashMap<V> {
+
+    private static final int NONE = -1;
+    private static final int MIN_CAPACITY = 16;
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ h >>> 32);
+    }
+
+    // Kept at most half full, so probe runs stay short.
+    static int tableSize(int expected) {
+        int size = MIN_CAPACITY;
+        while (size < expected * 2L) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    private final boolean accessOrder;
+    private long[] keys;
+    // A null value marks a free slot.
+    private Object[] values;
+    private int[] before;
+    private int[] after;
+    private int mask;
+    private int size;
+    private int head = NONE;
+    private int tail = NONE;
+
+    public LongObjectHashMap() {
+        this(MIN_CAPACITY, false);
+    }
+
+    /**
+     * @param expected - how many entries to make room for up front
+     * @param accessOrder - if set, reading or replacing an entry moves it to
+     *        the back of the order
+     */
+    public LongObjectHashMap(int expected, boolean accessOrder) {
+        this.accessOrder = accessOrder;
+        allocate(tableSize(expected));
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.before = new int[capacity];
+        this.after = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    // The slot holding key, or the free slot it would go in.
+    private int slot(long key) {
+        int i = hash(key) & this.mask;
+        while (this.values[i] != null && this.keys[i] != key) {
+            i = (i + 1) & this.mask;
+        }
+        return i;
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    public boolean containsKey(long key) {
+        return this.values[slot(key)] != null;
+    }
+
+    @Nullable
+    public V get(long key) {
+        int i = slot(key);
+        @SuppressWarnings("unchecked")
+        V value = (V) this.values[i];
+        if (value != null && this.accessOrder) {
+            moveToBack(i);
+        }
+        return value;
+    }
+
+    /**
+     * @return the value previously mapped to {@code key}, if any
+     */
+    @Nullable
+    public V put(long key, V value) {
+        checkNotNull(value, "value");
+        int i = slot(key);
+        @SuppressWarnings("unchecked")
+        V old = (V) this.values[i];
+        if (old != null) {
+            this.values[i] = value;
+            if (this.accessOrder) {
+                moveToBack(i);
+            }
+            return old;
+        }
+        insert(i, key, value);
+        return null;
+    }
+
+    /**
+     * Gets the value for {@code key}, creating it with {@code function} if
+     * there isn't one. {@code function} must not change this map.
+     */
+    public V computeIfAbsent(long key, LongFunction<? extends V> function) {
+        int i = slot(key);
+        @SuppressWarnings("unchecked")
+        V value = (V) this.values[i];
+        if (value != null) {
+            if (this.accessOrder) {
+                moveToBack(i);
+            }
+            return value;
+        }
+        value = checkNotNull(function.apply(key), "computed value");
+        insert(i, key, value);
+        return value;
+    }
+
+    private void insert(int i, long key, V value) {
+        this.keys[i] = key;
+        this.values[i] = value;
+        link(i);
+        this.size++;
+        if (this.size * 2 > this.keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * @return the removed value, if there was one
+     */
+    @Nullable
+    public V remove(long key) {
+        int i = slot(key);
+        @SuppressWarnings("unchecked")
+        V old = (V) this.values[i];
+        if (old == null) {
+            return null;
+        }
+        unlink(i);
+        this.values[i] = null;
+        this.size--;
+        shiftBack(i);
+        return old;
+    }
+
+    /**
+     * Gets the key at the front of the order: the first inserted, or the
+     * least recently used if this map is access ordered.
+     *
+     * @throws NoSuchElementException if the map is empty
+     */
+    public long eldestKey() {
+        if (this.head == NONE) {
+            throw new NoSuchElementException();
+        }
+        return this.keys[this.head];
+    }
+
+    public void clear() {
+        Arrays.fill(this.values, null);
+        this.size = 0;
+        this.head = NONE;
+        this.tail = NONE;
+    }
+
+    /**
+     * Passes every entry to {@code action}, in order. {@code action} must
+     * not change this map.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(LongObjectConsumer<? super V> action) {
+        for (int i = this.head; i != NONE; i = this.after[i]) {
+            action.accept(this.keys[i], (V) this.values[i]);
+        }
+    }
+
+    private void link(int i) {
+        this.before[i] = this.tail;
+        this.after[i] = NONE;
+        if (this.tail == NONE) {
+            this.head = i;
+        } else {
+            this.after[this.tail] = i;
+        }
+        this.tail = i;
+    }
+
+    private void unlink(int i) {
+        int b = this.before[i];
+        int a = this.after[i];
+        if (b == NONE) {
+            this.head = a;
+        } else {
+            this.after[b] = a;
+        }
+        if (a == NONE) {
+            this.tail = b;
+        } else {
+            this.before[a] = b;
+        }
+    }
+
+    private void moveToBack(int i) {
+        if (this.tail != i) {
+            unlink(i);
+            link(i);
+        }
+    }
+
+    // Pulls later entries of the probe run back into the freed slot, so
+    // lookups never have to skip over deleted markers.
+    private void shiftBack(int free) {
+        int i = (free + 1) & this.mask;
+        while (this.values[i] != null) {
+            int ideal = hash(this.keys[i]) & this.mask;
+            // Movable if the free slot is between its ideal slot and i.
+            if (((i - ideal) & this.mask) >= ((i - free) & this.mask)) {
+                move(i, free);
+                free = i;
+            }
+            i = (i + 1) & this.mask;
+        }
+    }
+
+    private void move(int from, int to) {
+        this.keys[to] = this.keys[from];
+        this.values[to] = this.values[from];
+        this.values[from] = null;
+        int b = this.before[from];
+        int a = this.after[from];
+        this.before[to] = b;
+        this.after[to] = a;
+        if (b == NONE) {
+            this.head = to;
+        } else {
+            this.after[b] = to;
+        }
+        if (a == NONE) {
+            this.tail = to;
+        } else {
+            this.before[a] = to;
+        }
+    }
+
+    private void grow() {
+        long[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        int[] oldAfter = this.after;
+        int oldHead = this.head;
+        allocate(oldKeys.length * 2);
+        this.head = NONE;
+        this.tail = NONE;
+        for (int i = oldHead; i != NONE; i = oldAfter[i]) {
+            int slot = slot(oldKeys[i]);
+            this.keys[slot] = oldKeys[i];
+            this.values[slot] = oldValues[i];
+            link(slot);
+        }
+    }
+
+}
@@ -24,15 +24,14 @@
  */
 package me.kenzierocks.plugins.planetesimals.util;
 
-import java.util.Collection;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.Set;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.stream.IntStream;
+import java.util.function.IntPredicate;
 import java.util.stream.Stream;
-
-import org.spongepowered.api.util.GuavaCollectors;
+import java.util.stream.StreamSupport;
 
 import com.flowpowered.math.vector.Vector3i;
 import com.google.common.collect.ImmutableSet;
@@ -42,58 +41,144 @@ public class VectorHelper {
 
     public static void loopVolume(Vector3i min, Vector3i max, Filter filter,
             Consumer<Vector3i> callback) {
-        range(min.getX(), max.getX()).filter(filter.getXFilter()).forEach(x -> {
-            range(min.getY(), max.getY()).filter(filter.getYFilter())
-                    .forEach(y -> {
-                range(min.getZ(), max.getZ()).filter(filter.getZFilter())
-                        .forEach(z -> {
-                    callback.accept(new Vector3i(x, y, z));
-                });
-            });
-        });
+        forEachInVolume(min, max, filter,
+                (x, y, z) -> callback.accept(new Vector3i(x, y, z)));
+    }
+
+    /**
+     * Calls {@code callback} for each position in the volume, inclusive,
+     * that passes {@code filter}. Each filter is tested once per coordinate
+     * rather than once per cell, and nothing is allocated per cell.
+     */
+    public static void forEachInVolume(Vector3i min, Vector3i max,
+            Filter filter, IntTriConsumer callback) {
+        int[] ys = accepted(min.getY(), max.getY(), filter.getYFilter());
+        int[] zs = accepted(min.getZ(), max.getZ(), filter.getZFilter());
+        IntPredicate xFilter = filter.getXFilter();
+        for (int x = min.getX(); x <= max.getX(); x++) {
+            if (!xFilter.test(x)) {
+                continue;
+            }
+            for (int y : ys) {
+                for (int z : zs) {
+                    callback.accept(x, y, z);
+                }
+            }
+        }
     }
 
     public static <T> Stream<T> streamVolume(Vector3i min, Vector3i max,
             Filter filter, Function<Vector3i, T> callback) {
-        return range(min.getX(), max.getX()).filter(filter.getXFilter())
-                .mapToObj(x -> {
-                    return range(min.getY(), max.getY())
-                            .filter(filter.getYFilter()).mapToObj(y -> {
-                        return range(min.getZ(), max.getZ())
-                                .filter(filter.getZFilter()).mapToObj(z -> {
-                            return callback.apply(new Vector3i(x, y, z));
-                        });
-                    }).flatMap(Function.identity());
-                }).flatMap(Function.identity());
+        return StreamSupport.stream(spliterateVolume(min, max, filter), false)
+                .map(callback);
     }
 
-    private static IntStream range(int x1, int x2) {
-        return IntStream.rangeClosed(x1, x2);
+    /**
+     * Creates a spliterator over the volume, inclusive, that splits evenly
+     * for parallel streams.
+     */
+    public static VolumeSpliterator spliterateVolume(Vector3i min,
+            Vector3i max, Filter filter) {
+        return new VolumeSpliterator(
+                accepted(min.getX(), max.getX(), filter.getXFilter()),
+                accepted(min.getY(), max.getY(), filter.getYFilter()),
+                accepted(min.getZ(), max.getZ(), filter.getZFilter()));
     }
 
-    private static final Collection<Vector3i> NEIGHBOR_OFFSETS;
+    private static int[] accepted(int min, int max, IntPredicate filter) {
+        if (max < min) {
+            return new int[0];
+        }
+        int[] values = new int[max - min + 1];
+        int count = 0;
+        for (int i = min; i <= max; i++) {
+            if (filter.test(i)) {
+                values[count++] = i;
+            }
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    public static final int NEIGHBOR_COUNT = 26;
+    public static final int FACE_NEIGHBOR_COUNT = 6;
+
+    // dx, dy, dz for each neighbor, faces first so the first
+    // FACE_NEIGHBOR_COUNT entries are also the face neighbors.
+    private static final int[] NEIGHBOR_OFFSETS =
+            new int[NEIGHBOR_COUNT * 3];
 
     static {
-        ImmutableSet.Builder<Vector3i> offsetVectors = ImmutableSet.builder();
+        int[] faces = { -1, 0, 0, 1, 0, 0, 0, -1, 0, 0, 1, 0, 0, 0, -1, 0,
+                0, 1 };
+        System.arraycopy(faces, 0, NEIGHBOR_OFFSETS, 0, faces.length);
+        int i = faces.length;
         for (int x = -1; x < 2; x++) {
             for (int y = -1; y < 2; y++) {
                 for (int z = -1; z < 2; z++) {
-                    if (x + y + z == 0) {
+                    // Skip the center and the faces already added.
+                    if (Math.abs(x) + Math.abs(y) + Math.abs(z) < 2) {
                         continue;
                     }
-                    offsetVectors.add(new Vector3i(x, y, z));
+                    NEIGHBOR_OFFSETS[i++] = x;
+                    NEIGHBOR_OFFSETS[i++] = y;
+                    NEIGHBOR_OFFSETS[i++] = z;
                 }
             }
         }
-        NEIGHBOR_OFFSETS = offsetVectors.build();
+    }
+
+    /**
+     * Gets the x offset of neighbor {@code index}, counting from 0 up to
+     * {@link #NEIGHBOR_COUNT}. Indexes below {@link #FACE_NEIGHBOR_COUNT}
+     * are the face neighbors.
+     */
+    public static int getNeighborX(int index) {
+        return NEIGHBOR_OFFSETS[index * 3];
+    }
+
+    public static int getNeighborY(int index) {
+        return NEIGHBOR_OFFSETS[index * 3 + 1];
+    }
+
+    public static int getNeighborZ(int index) {
+        return NEIGHBOR_OFFSETS[index * 3 + 2];
+    }
+
+    /**
+     * Calls {@code callback} with each of the 26 cells around the given
+     * one, corners included.
+     */
+    public static void forEachNeighbor(int x, int y, int z,
+            IntTriConsumer callback) {
+        forEachNeighbor(x, y, z, NEIGHBOR_COUNT, callback);
+    }
+
+    /**
+     * Calls {@code callback} with each of the 6 cells sharing a face with
+     * the given one.
+     */
+    public static void forEachFaceNeighbor(int x, int y, int z,
+            IntTriConsumer callback) {
+        forEachNeighbor(x, y, z, FACE_NEIGHBOR_COUNT, callback);
+    }
+
+    private static void forEachNeighbor(int x, int y, int z, int count,
+            IntTriConsumer callback) {
+        int[] offsets = NEIGHBOR_OFFSETS;
+        for (int i = 0; i < count * 3; i += 3) {
+            callback.accept(x + offsets[i], y + offsets[i + 1],
+                    z + offsets[i + 2]);
+        }
     }
 
     /**
      * Neighbors includes corners as well.
      */
     public static Set<Vector3i> getNeighbors(Vector3i vec) {
-        return NEIGHBOR_OFFSETS.stream().map(x -> vec.add(x))
-                .collect(GuavaCollectors.toImmutableSet());
+        ImmutableSet.Builder<Vector3i> neighbors = ImmutableSet.builder();
+        forEachNeighbor(vec.getX(), vec.getY(), vec.getZ(),
+                (x, y, z) -> neighbors.add(new Vector3i(x, y, z)));
+        return neighbors.build();
     }
 
     public static Set<Vector3i> generateRandomVectors(Random random, int count,
@@ -0,0 +1,130 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.util;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import com.flowpowered.math.vector.Vector3i;
+
+/**
+ * Walks the cells of a filtered volume in x, y, z order. Cells are numbered
+ * by a single index, so splitting just halves the remaining index range and
+ * parallel streams get evenly sized chunks of work.
+ */
+public final class VolumeSpliterator implements Spliterator<Vector3i> {
+
+    private static final int CHARACTERISTICS = ORDERED | DISTINCT | SIZED
+            | SUBSIZED | NONNULL | IMMUTABLE;
+
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] zs;
+    private long index;
+    private final long fence;
+
+    VolumeSpliterator(int[] xs, int[] ys, int[] zs) {
+        this(xs, ys, zs, 0, (long) xs.length * ys.length * zs.length);
+    }
+
+    private VolumeSpliterator(int[] xs, int[] ys, int[] zs, long index,
+            long fence) {
+        this.xs = xs;
+        this.ys = ys;
+        this.zs = zs;
+        this.index = index;
+        this.fence = fence;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Vector3i> action) {
+        if (this.index >= this.fence) {
+            return false;
+        }
+        long i = this.index++;
+        long plane = (long) this.ys.length * this.zs.length;
+        int rest = (int) (i % plane);
+        action.accept(new Vector3i(this.xs[(int) (i / plane)],
+                this.ys[rest / this.zs.length],
+                this.zs[rest % this.zs.length]));
+        return true;
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super Vector3i> action) {
+        forEachRemaining((x, y, z) -> action.accept(new Vector3i(x, y, z)));
+    }
+
+    /**
+     * Passes every remaining cell to {@code action} without allocating.
+     */
+    public void forEachRemaining(IntTriConsumer action) {
+        long i = this.index;
+        long end = this.fence;
+        if (i >= end) {
+            return;
+        }
+        this.index = end;
+        int[] xs = this.xs;
+        int[] ys = this.ys;
+        int[] zs = this.zs;
+        long plane = (long) ys.length * zs.length;
+        int xi = (int) (i / plane);
+        int rest = (int) (i % plane);
+        int yi = rest / zs.length;
+        int zi = rest % zs.length;
+        for (; i < end; xi++, yi = 0) {
+            int x = xs[xi];
+            for (; yi < ys.length && i < end; yi++, zi = 0) {
+                int y = ys[yi];
+                for (; zi < zs.length && i < end; zi++, i++) {
+                    action.accept(x, y, zs[zi]);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Spliterator<Vector3i> trySplit() {
+        long lo = this.index;
+        long mid = (lo + this.fence) >>> 1;
+        if (mid <= lo) {
+            return null;
+        }
+        this.index = mid;
+        return new VolumeSpliterator(this.xs, this.ys, this.zs, lo, mid);
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.fence - this.index;
+    }
+
+    @Override
+    public int characteristics() {
+        return CHARACTERISTICS;
+    }
+
+}
@@ -27,11 +27,13 @@ package me.kenzierocks.plugins.planetesimals.world;
 import java.util.Collection;
 import java.util.Set;
 
-import org.spongepowered.api.util.GuavaCollectors;
-
 import com.flowpowered.math.vector.Vector3i;
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 
+import me.kenzierocks.plugins.planetesimals.util.IntTriConsumer;
+import me.kenzierocks.plugins.planetesimals.util.LongHashSet;
 import me.kenzierocks.plugins.planetesimals.util.VectorHelper;
 
 @AutoValue
@@ -54,19 +56,23 @@ public abstract class ChunkBoundary {
     }
 
     public static Set<ChunkBoundary> getNeighbors(ChunkBoundary chunk) {
-        Vector3i chunkPos = chunk.getChunkMin();
-        Set<Vector3i> neighbors = VectorHelper.getNeighbors(chunkPos);
-        return neighbors.stream().map(ChunkBoundary::create)
-                .collect(GuavaCollectors.toImmutableSet());
+        return getNeighbors(ImmutableList.of(chunk));
     }
 
     public static Set<ChunkBoundary>
             getNeighbors(Collection<ChunkBoundary> chunks) {
-        return chunks.stream()
-                .flatMap(bndry -> VectorHelper.getNeighbors(bndry.getChunkMin())
-                        .stream())
-                .map(ChunkBoundary::create).distinct()
-                .collect(GuavaCollectors.toImmutableSet());
+        // Deduplicate packed keys, then only build the ones that are left.
+        LongHashSet keys = new LongHashSet(
+                chunks.size() * (VectorHelper.NEIGHBOR_COUNT + 1));
+        IntTriConsumer addKey = (x, y, z) -> keys.add(ChunkKey.pack(x, y, z));
+        for (ChunkBoundary chunk : chunks) {
+            Vector3i pos = chunk.getChunkMin();
+            VectorHelper.forEachNeighbor(pos.getX(), pos.getY(), pos.getZ(),
+                    addKey);
+        }
+        ImmutableSet.Builder<ChunkBoundary> neighbors = ImmutableSet.builder();
+        keys.forEach(key -> neighbors.add(ChunkKey.toBoundary(key)));
+        return neighbors.build();
     }
 
     ChunkBoundary() {
@@ -0,0 +1,95 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.world;
+
+import java.util.function.LongConsumer;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.util.LongHashSet;
+import me.kenzierocks.plugins.planetesimals.util.VectorHelper;
+
+/**
+ * Chunk coordinates packed into one {@code long}: 26 bits each of x and z
+ * and 12 bits of y, which covers any world. Packed keys hash and compare
+ * without allocating, unlike {@link ChunkBoundary} or {@link Vector3i}.
+ */
+public final class ChunkKey {
+
+    public static long pack(int chunkX, int chunkY, int chunkZ) {
+        return (chunkX & 0x3FFFFFFL) << 38 | (chunkZ & 0x3FFFFFFL) << 12
+                | (chunkY & 0xFFFL);
+    }
+
+    public static long pack(Vector3i chunk) {
+        return pack(chunk.getX(), chunk.getY(), chunk.getZ());
+    }
+
+    public static int getX(long key) {
+        return (int) (key >> 38);
+    }
+
+    public static int getY(long key) {
+        return (int) (key << 52 >> 52);
+    }
+
+    public static int getZ(long key) {
+        return (int) (key << 26 >> 38);
+    }
+
+    public static Vector3i toVector(long key) {
+        return new Vector3i(getX(key), getY(key), getZ(key));
+    }
+
+    public static ChunkBoundary toBoundary(long key) {
+        return ChunkBoundary.create(toVector(key));
+    }
+
+    /**
+     * Passes the key of each of the 26 chunks around the given one, corners
+     * included, to {@code action}.
+     */
+    public static void forEachNeighbor(long key, LongConsumer action) {
+        int x = getX(key);
+        int y = getY(key);
+        int z = getZ(key);
+        for (int i = 0; i < VectorHelper.NEIGHBOR_COUNT; i++) {
+            action.accept(pack(x + VectorHelper.getNeighborX(i),
+                    y + VectorHelper.getNeighborY(i),
+                    z + VectorHelper.getNeighborZ(i)));
+        }
+    }
+
+    /**
+     * Adds the neighbors of every chunk in {@code chunks} to {@code into}.
+     */
+    public static void addNeighbors(LongHashSet chunks, LongHashSet into) {
+        chunks.forEach(key -> forEachNeighbor(key, into::add));
+    }
+
+    private ChunkKey() {
+    }
+
+}
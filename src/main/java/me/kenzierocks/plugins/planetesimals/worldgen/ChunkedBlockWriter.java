@@ -0,0 +1,212 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import org.spongepowered.api.block.BlockState;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.extent.MutableBlockVolume;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.util.LongObjectHashMap;
+import me.kenzierocks.plugins.planetesimals.world.ChunkKey;
+
+/**
+ * Collects z-runs grouped by the chunk they fall in, then writes each group
+ * straight into its chunk. Runs are clipped to a box once as they come in
+ * and split at chunk borders, so applying them needs no bounds checks or
+ * world level chunk lookups per block.
+ */
+public class ChunkedBlockWriter implements BlockSpanSink {
+
+    // x, y, minZ, maxZ, palette index
+    private static final int RUN_SIZE = 5;
+
+    private static final class ChunkRuns {
+
+        private final Vector3i chunk;
+        private int[] runs = new int[RUN_SIZE * 16];
+        private int size;
+
+        private ChunkRuns(long key) {
+            this.chunk = ChunkKey.toVector(key);
+        }
+
+        private void add(int x, int y, int minZ, int maxZ, int state) {
+            if (this.size == this.runs.length) {
+                this.runs = Arrays.copyOf(this.runs, this.size * 2);
+            }
+            this.runs[this.size++] = x;
+            this.runs[this.size++] = y;
+            this.runs[this.size++] = minZ;
+            this.runs[this.size++] = maxZ;
+            this.runs[this.size++] = state;
+        }
+
+    }
+
+    private final Vector3i chunkSize;
+    private final Vector3i clipMin;
+    private final Vector3i clipMax;
+    private final List<BlockState> palette = new ArrayList<>(4);
+    // Insertion ordered, keyed by packed chunk position.
+    private final LongObjectHashMap<ChunkRuns> chunks =
+            new LongObjectHashMap<>();
+    // Consecutive runs usually land in the same chunk.
+    private ChunkRuns lastChunk;
+
+    /**
+     * Creates a writer that drops anything outside {@code clipMin} to
+     * {@code clipMax}, inclusive.
+     */
+    public ChunkedBlockWriter(Vector3i chunkSize, Vector3i clipMin,
+            Vector3i clipMax) {
+        this.chunkSize = chunkSize;
+        this.clipMin = clipMin;
+        this.clipMax = clipMax;
+    }
+
+    @Override
+    public void setBlocks(int x, int y, int minZ, int maxZ, BlockState state) {
+        if (x < this.clipMin.getX() || x > this.clipMax.getX()
+                || y < this.clipMin.getY() || y > this.clipMax.getY()) {
+            return;
+        }
+        int from = Math.max(minZ, this.clipMin.getZ());
+        int to = Math.min(maxZ, this.clipMax.getZ());
+        if (from > to) {
+            return;
+        }
+        int stateIndex = paletteIndex(state);
+        int chunkX = Math.floorDiv(x, this.chunkSize.getX());
+        int chunkY = Math.floorDiv(y, this.chunkSize.getY());
+        while (from <= to) {
+            int chunkZ = Math.floorDiv(from, this.chunkSize.getZ());
+            int end = Math.min(to,
+                    (chunkZ + 1) * this.chunkSize.getZ() - 1);
+            getRuns(chunkX, chunkY, chunkZ).add(x, y, from, end, stateIndex);
+            from = end + 1;
+        }
+    }
+
+    private int paletteIndex(BlockState state) {
+        for (int i = 0; i < this.palette.size(); i++) {
+            if (this.palette.get(i) == state) {
+                return i;
+            }
+        }
+        this.palette.add(state);
+        return this.palette.size() - 1;
+    }
+
+    private ChunkRuns getRuns(int chunkX, int chunkY, int chunkZ) {
+        ChunkRuns last = this.lastChunk;
+        if (last != null && last.chunk.getX() == chunkX
+                && last.chunk.getY() == chunkY
+                && last.chunk.getZ() == chunkZ) {
+            return last;
+        }
+        this.lastChunk = this.chunks.computeIfAbsent(
+                ChunkKey.pack(chunkX, chunkY, chunkZ), ChunkRuns::new);
+        return this.lastChunk;
+    }
+
+    /**
+     * Moves every run collected by {@code other} into this writer. Both
+     * writers should share a clip box; runs aren't clipped again.
+     */
+    public void addAll(ChunkedBlockWriter other) {
+        int[] remap = new int[other.palette.size()];
+        for (int i = 0; i < remap.length; i++) {
+            remap[i] = paletteIndex(other.palette.get(i));
+        }
+        other.chunks.forEach((key, from) -> {
+            ChunkRuns to = this.chunks.computeIfAbsent(key, ChunkRuns::new);
+            int[] data = from.runs;
+            for (int i = 0; i < from.size; i += RUN_SIZE) {
+                to.add(data[i], data[i + 1], data[i + 2], data[i + 3],
+                        remap[data[i + 4]]);
+            }
+        });
+        other.chunks.clear();
+        other.lastChunk = null;
+    }
+
+    public boolean isEmpty() {
+        return this.chunks.isEmpty();
+    }
+
+    /**
+     * Writes every collected run into {@code world}. Chunks that aren't
+     * loaded are skipped unless {@code loadChunks} is set.
+     */
+    public void apply(World world, boolean loadChunks) {
+        while (applyNext(world, loadChunks)) {
+            // Keep going until every chunk is written.
+        }
+    }
+
+    /**
+     * Writes and forgets the runs of one chunk, so large batches can be
+     * spread over several ticks.
+     *
+     * @return {@code false} if there was nothing left to write
+     */
+    public boolean applyNext(World world, boolean loadChunks) {
+        if (this.chunks.isEmpty()) {
+            return false;
+        }
+        ChunkRuns runs = this.chunks.remove(this.chunks.eldestKey());
+        if (runs == this.lastChunk) {
+            this.lastChunk = null;
+        }
+        Optional<Chunk> chunk = loadChunks ? world.loadChunk(runs.chunk, true)
+                : world.getChunk(runs.chunk);
+        if (chunk.isPresent()) {
+            apply(chunk.get(), runs);
+        }
+        return true;
+    }
+
+    private void apply(MutableBlockVolume volume, ChunkRuns runs) {
+        int[] data = runs.runs;
+        for (int i = 0; i < runs.size; i += RUN_SIZE) {
+            int x = data[i];
+            int y = data[i + 1];
+            int maxZ = data[i + 3];
+            BlockState state = this.palette.get(data[i + 4]);
+            for (int z = data[i + 2]; z <= maxZ; z++) {
+                volume.setBlock(x, y, z, state);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,213 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.collect.ImmutableList;
+
+import me.kenzierocks.plugins.planetesimals.util.LatencyRecorder;
+
+/**
+ * Timers and counters for planet generation. Everything here is safe to
+ * record into from any thread without allocating.
+ */
+public final class GenerationMetrics {
+
+    private final LatencyRecorder collisionCheck =
+            new LatencyRecorder("collision check");
+    private final LatencyRecorder storageQuery =
+            new LatencyRecorder("storage query");
+    private final LatencyRecorder voxelization =
+            new LatencyRecorder("voxelization");
+    private final LatencyRecorder blockWrites =
+            new LatencyRecorder("block writes");
+    private final LatencyRecorder planApply =
+            new LatencyRecorder("plan apply");
+    private final LongAdder attempts = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder boundsRejections = new LongAdder();
+    private final LongAdder populatedRejections = new LongAdder();
+    private final LongAdder collisionRejections = new LongAdder();
+    private final LongAdder prefilterPasses = new LongAdder();
+    private final LongAdder placements = new LongAdder();
+    private final LongAdder indexHits = new LongAdder();
+    private final LongAdder indexMisses = new LongAdder();
+    private final LongAdder planHits = new LongAdder();
+    private final LongAdder planMisses = new LongAdder();
+    private final LongAdder planRechecks = new LongAdder();
+    private final LongAdder planRecheckRejections = new LongAdder();
+
+    /**
+     * Times a whole {@code canPlaceAt} check.
+     */
+    public LatencyRecorder getCollisionCheck() {
+        return this.collisionCheck;
+    }
+
+    /**
+     * Times each range query made to planet storage.
+     */
+    public LatencyRecorder getStorageQuery() {
+        return this.storageQuery;
+    }
+
+    /**
+     * Times rasterizing a planet into block runs.
+     */
+    public LatencyRecorder getVoxelization() {
+        return this.voxelization;
+    }
+
+    /**
+     * Times writing block runs into chunks.
+     */
+    public LatencyRecorder getBlockWrites() {
+        return this.blockWrites;
+    }
+
+    /**
+     * Times placing a chunk's planned planets on the server thread,
+     * including planning it there if its plan wasn't ready.
+     */
+    public LatencyRecorder getPlanApply() {
+        return this.planApply;
+    }
+
+    public LongAdder getAttempts() {
+        return this.attempts;
+    }
+
+    public LongAdder getRejections() {
+        return this.rejections;
+    }
+
+    /**
+     * Counts attempts rejected for being too close to the world's edge.
+     */
+    public LongAdder getBoundsRejections() {
+        return this.boundsRejections;
+    }
+
+    /**
+     * Counts attempts rejected for reaching into a chunk that's already
+     * populated, with chunk-local writes.
+     */
+    public LongAdder getPopulatedRejections() {
+        return this.populatedRejections;
+    }
+
+    /**
+     * Counts attempts rejected for touching an existing planet.
+     */
+    public LongAdder getCollisionRejections() {
+        return this.collisionRejections;
+    }
+
+    /**
+     * Counts attempts accepted by the occupancy bitmap, without an exact
+     * collision check.
+     */
+    public LongAdder getPrefilterPasses() {
+        return this.prefilterPasses;
+    }
+
+    public LongAdder getPlacements() {
+        return this.placements;
+    }
+
+    /**
+     * Counts chunk lookups the planet index answered from memory.
+     */
+    public LongAdder getIndexHits() {
+        return this.indexHits;
+    }
+
+    /**
+     * Counts chunk lookups the planet index had to load from storage.
+     */
+    public LongAdder getIndexMisses() {
+        return this.indexMisses;
+    }
+
+    /**
+     * Counts chunks populated with a finished plan.
+     */
+    public LongAdder getPlanHits() {
+        return this.planHits;
+    }
+
+    /**
+     * Counts chunks populated before their plan was finished, which were
+     * planned on the server thread instead.
+     */
+    public LongAdder getPlanMisses() {
+        return this.planMisses;
+    }
+
+    /**
+     * Counts planned planets checked again on the server thread, against
+     * planets placed since they were planned.
+     */
+    public LongAdder getPlanRechecks() {
+        return this.planRechecks;
+    }
+
+    /**
+     * Counts planned planets dropped by that check.
+     */
+    public LongAdder getPlanRecheckRejections() {
+        return this.planRecheckRejections;
+    }
+
+    public List<LatencyRecorder> getRecorders() {
+        return ImmutableList.of(this.collisionCheck, this.storageQuery,
+                this.voxelization, this.blockWrites, this.planApply);
+    }
+
+    /**
+     * Summarizes everything, one line per timer after a line of counters.
+     */
+    public List<String> digest() {
+        ImmutableList.Builder<String> lines = ImmutableList.builder();
+        lines.add("attempts: " + this.attempts.sum() + ", rejections: "
+                + this.rejections.sum() + " (bounds "
+                + this.boundsRejections.sum() + ", populated "
+                + this.populatedRejections.sum() + ", collision "
+                + this.collisionRejections.sum() + "), prefiltered: "
+                + this.prefilterPasses.sum() + ", placements: "
+                + this.placements.sum());
+        lines.add("index hits: " + this.indexHits.sum() + ", misses: "
+                + this.indexMisses.sum());
+        lines.add("plan hits: " + this.planHits.sum() + ", misses: "
+                + this.planMisses.sum() + ", rechecks: "
+                + this.planRechecks.sum() + " (rejected "
+                + this.planRecheckRejections.sum() + ")");
+        getRecorders().forEach(recorder -> lines.add(recorder.summarize()));
+        return lines.build();
+    }
+
+}
@@ -0,0 +1,134 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import com.flowpowered.math.vector.Vector3i;
+
+/**
+ * Rasterizes large planets on a fork-join pool. The sphere is cut into
+ * slabs along x, each drawn into its own {@link ChunkedBlockWriter}, and the
+ * slabs are merged back into one set of per-chunk batches. Nothing here
+ * touches the world; the batches are written on the server thread.
+ */
+public class ParallelVoxelizer {
+
+    // Slabs this wide or less are drawn by a single task.
+    private static final int SLAB_WIDTH = 16;
+
+    private static final class SlabTask
+            extends RecursiveTask<ChunkedBlockWriter> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Planet planet;
+        private final PlanetDesign design;
+        private final boolean filled;
+        private final Vector3i chunkSize;
+        private final Vector3i clipMin;
+        private final Vector3i clipMax;
+        private final int fromX;
+        private final int toX;
+
+        private SlabTask(Planet planet, PlanetDesign design, boolean filled,
+                Vector3i chunkSize, Vector3i clipMin, Vector3i clipMax,
+                int fromX, int toX) {
+            this.planet = planet;
+            this.design = design;
+            this.filled = filled;
+            this.chunkSize = chunkSize;
+            this.clipMin = clipMin;
+            this.clipMax = clipMax;
+            this.fromX = fromX;
+            this.toX = toX;
+        }
+
+        private SlabTask slab(int from, int to) {
+            return new SlabTask(this.planet, this.design, this.filled,
+                    this.chunkSize, this.clipMin, this.clipMax, from, to);
+        }
+
+        @Override
+        protected ChunkedBlockWriter compute() {
+            if (this.toX - this.fromX < SLAB_WIDTH) {
+                ChunkedBlockWriter writer = new ChunkedBlockWriter(
+                        this.chunkSize, this.clipMin, this.clipMax);
+                ShapeHelper.makeSphere(this.planet.getPosition(), this.design,
+                        this.planet.getRadius(), this.filled, this.fromX,
+                        this.toX, writer);
+                return writer;
+            }
+            int mid = (this.fromX + this.toX) >> 1;
+            SlabTask high = slab(mid + 1, this.toX);
+            high.fork();
+            ChunkedBlockWriter writer = slab(this.fromX, mid).compute();
+            writer.addAll(high.join());
+            return writer;
+        }
+
+    }
+
+    private final ForkJoinPool pool;
+
+    public ParallelVoxelizer(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool
+                    .defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("Planetesimals Voxelizer-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Draws {@code planet}, clipped to {@code clipMin} to {@code clipMax},
+     * off the calling thread.
+     */
+    public CompletableFuture<ChunkedBlockWriter> voxelize(Planet planet,
+            PlanetDesign design, boolean filled, Vector3i chunkSize,
+            Vector3i clipMin, Vector3i clipMax) {
+        int r = planet.getRadius();
+        SlabTask task = new SlabTask(planet, design, filled, chunkSize,
+                clipMin, clipMax, -r, r);
+        return CompletableFuture.supplyAsync(task::invoke, this.pool);
+    }
+
+    /**
+     * Stops taking work and waits for planets already started.
+     */
+    public void close() {
+        this.pool.shutdown();
+        try {
+            this.pool.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
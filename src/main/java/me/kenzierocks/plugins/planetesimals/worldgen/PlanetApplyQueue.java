@@ -0,0 +1,138 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.world.World;
+
+import me.kenzierocks.plugins.planetesimals.util.LatencyRecorder;
+
+/**
+ * Writes prepared block batches into the world on the server thread. Each
+ * tick only spends up to its budget, one chunk at a time, and picks up
+ * where it left off on the next tick.
+ */
+public class PlanetApplyQueue {
+
+    private static final class Batch {
+
+        private final UUID world;
+        private final ChunkedBlockWriter writer;
+        private final boolean loadChunks;
+
+        private Batch(UUID world, ChunkedBlockWriter writer,
+                boolean loadChunks) {
+            this.world = world;
+            this.writer = writer;
+            this.loadChunks = loadChunks;
+        }
+
+    }
+
+    private final Queue<Batch> queue = new ConcurrentLinkedQueue<>();
+    private final long budgetNanos;
+    private final LatencyRecorder writeLatency;
+    private Task task;
+
+    /**
+     * @param writeLatency - records the time spent writing each chunk
+     */
+    public PlanetApplyQueue(long budgetMillis, LatencyRecorder writeLatency) {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.writeLatency = writeLatency;
+    }
+
+    public synchronized void start(Object plugin) {
+        if (this.task == null) {
+            this.task = Sponge.getScheduler().createTaskBuilder()
+                    .name("Planetesimals Apply Queue").intervalTicks(1)
+                    .execute(this::tick).submit(plugin);
+        }
+    }
+
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        applyAll();
+    }
+
+    /**
+     * Queues {@code writer} to be written into {@code world}. Safe to call
+     * from any thread.
+     */
+    public void submit(UUID world, ChunkedBlockWriter writer,
+            boolean loadChunks) {
+        this.queue.add(new Batch(world, writer, loadChunks));
+    }
+
+    public int size() {
+        return this.queue.size();
+    }
+
+    private void tick() {
+        long deadline = System.nanoTime() + this.budgetNanos;
+        do {
+            if (!applyNext()) {
+                return;
+            }
+        } while (System.nanoTime() < deadline);
+    }
+
+    /**
+     * Writes everything queued right now, ignoring the budget.
+     */
+    public void applyAll() {
+        while (applyNext()) {
+            // Keep going until the queue is empty.
+        }
+    }
+
+    private boolean applyNext() {
+        Batch batch = this.queue.peek();
+        if (batch == null) {
+            return false;
+        }
+        Optional<World> world = Sponge.getServer().getWorld(batch.world);
+        long start = System.nanoTime();
+        if (!world.isPresent()
+                || !batch.writer.applyNext(world.get(), batch.loadChunks)) {
+            // Finished, or the world went away.
+            this.queue.remove(batch);
+            return true;
+        }
+        this.writeLatency.recordSince(start);
+        return true;
+    }
+
+}
@@ -0,0 +1,58 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetIndex;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetWriter;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PopulatedChunks;
+
+/**
+ * Everything world generation needs from its surroundings. The plugin
+ * provides the live server's; tools can provide stand-ins and run world
+ * generation without a server.
+ */
+public interface PlanetContext {
+
+    ChunkLayout getChunkLayout();
+
+    PlanetIndex getPlanetIndex(World world);
+
+    PopulatedChunks getPopulatedChunks(World world);
+
+    PlanetWriter getPlanetWriter();
+
+    ParallelVoxelizer getVoxelizer();
+
+    PlanetApplyQueue getApplyQueue();
+
+    GenerationMetrics getMetrics();
+
+    Logger getLogger();
+
+}
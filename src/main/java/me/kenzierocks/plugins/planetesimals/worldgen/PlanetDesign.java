@@ -32,12 +32,29 @@ import com.google.auto.value.AutoValue;
 public abstract class PlanetDesign {
     
     public static PlanetDesign of(BlockType block) {
-        return new AutoValue_PlanetDesign(block);
+        return layered(block, block, block);
+    }
+
+    public static PlanetDesign layered(BlockType crust, BlockType mantle,
+            BlockType core) {
+        return new AutoValue_PlanetDesign(crust, mantle, core);
     }
 
     PlanetDesign() {
     }
     
+    /**
+     * The outer layer, and the only one drawn for hollow planets.
+     */
     public abstract BlockType getBlock();
+
+    public abstract BlockType getMantle();
+
+    public abstract BlockType getCore();
+
+    public boolean isLayered() {
+        return !getBlock().equals(getMantle())
+                || !getBlock().equals(getCore());
+    }
     
 }
@@ -59,15 +59,35 @@ public enum PlanetGenerator implements WorldGeneratorModifier {
         worldGenerator.getGenerationPopulators().clear();
         // No other populators.
         worldGenerator.getPopulators().clear();
-        worldGenerator
-                .getPopulators().add(
-                        new RandomObjectPopulator(new PlanetPopulator(),
-                                VariableAmount.fixed(10),
-                                VariableAmount.baseWithRandomAddition(
-                                        PlanetPopulator.MIN.getY(),
-                                        PlanetPopulator.MAX.getY()
-                                                - PlanetPopulator.MIN.getY()),
-                0.2));
+        Planetesimals plugin = Planetesimals.getInstance();
+        String placement = plugin.getPlacement();
+        if ("seeded".equals(placement)) {
+            worldGenerator.getPopulators()
+                    .add(new SeededPlanetPopulator(plugin,
+                            plugin.getPlanetStyle(),
+                            plugin.isRecordSeededPlanets()));
+        } else if ("planned".equals(placement)) {
+            PlanetPlanner planner = plugin.getPlanner();
+            worldGenerator.getPopulators()
+                    .add(new PlannedPlanetPopulator(planner));
+            worldGenerator.getPopulators()
+                    .add(new PlanetChunkPopulator(planner.getPopulator()));
+        } else {
+            PlanetPopulator planets = new PlanetPopulator(plugin,
+                    plugin.getPlanetStyle(), plugin.isChunkLocalWrites(),
+                    plugin.getParallelVoxelizeRadius());
+            worldGenerator.getPopulators()
+                    .add(new RandomObjectPopulator(planets,
+                            VariableAmount.fixed(
+                                    PlanetPopulator.ATTEMPTS_PER_CHUNK),
+                            VariableAmount.baseWithRandomAddition(
+                                    planets.getMin().getY(),
+                                    planets.getMax().getY()
+                                            - planets.getMin().getY()),
+                            PlanetPopulator.SPAWN_CHANCE));
+            worldGenerator.getPopulators()
+                    .add(new PlanetChunkPopulator(planets));
+        }
         // worldGenerator.setBiomeGenerator(new NothingBiomeGenerator());
         Sponge.getRegistry().getAllOf(BiomeType.class).stream()
                 .map(worldGenerator::getBiomeSettings).forEach(gen -> {
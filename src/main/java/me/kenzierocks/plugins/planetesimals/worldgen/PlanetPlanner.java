@@ -0,0 +1,290 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableList;
+
+import me.kenzierocks.plugins.planetesimals.util.LongHashSet;
+import me.kenzierocks.plugins.planetesimals.world.ChunkKey;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PopulatedChunks;
+
+/**
+ * Plans the planets of chunks near players before they are generated. A
+ * plan picks spots, checks them against the planet index and draws each
+ * planet, all on a worker pool. When the chunk is finally populated
+ * {@link #take(World, Vector3i)} hands the finished plan over, so the
+ * server thread only rechecks and queues the prepared blocks. Chunks whose
+ * plan wasn't ready are planned on the server thread, and both are counted
+ * in {@link GenerationMetrics}.
+ */
+public class PlanetPlanner {
+
+    private static final int SCAN_INTERVAL_TICKS = 20;
+    // Upper bound on plans held per world, finished or not.
+    private static final int MAX_PLANS = 4096;
+
+    public static final class PlannedPlanet {
+
+        private final Planet planet;
+        @Nullable
+        private final ChunkedBlockWriter blocks;
+
+        private PlannedPlanet(Planet planet,
+                @Nullable ChunkedBlockWriter blocks) {
+            this.planet = planet;
+            this.blocks = blocks;
+        }
+
+        public Planet getPlanet() {
+            return this.planet;
+        }
+
+        /**
+         * Gets the drawn planet, or {@code null} with chunk-local writes,
+         * where chunks draw their own parts as they are populated.
+         */
+        @Nullable
+        public ChunkedBlockWriter getBlocks() {
+            return this.blocks;
+        }
+
+    }
+
+    private final PlanetPopulator populator;
+    private final int radius;
+    private final ExecutorService workers;
+    private final Map<UUID, Map<Vector3i,
+            CompletableFuture<List<PlannedPlanet>>>> plans =
+                    new ConcurrentHashMap<>();
+    private Task task;
+
+    /**
+     * @param radius - how many chunks around each player to plan ahead
+     */
+    public PlanetPlanner(PlanetPopulator populator, int radius, int threads) {
+        this.populator = populator;
+        this.radius = radius;
+        AtomicInteger count = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r,
+                    "Planetesimals Planner-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public PlanetPopulator getPopulator() {
+        return this.populator;
+    }
+
+    public synchronized void start(Object plugin) {
+        if (this.task == null) {
+            this.task = Sponge.getScheduler().createTaskBuilder()
+                    .name("Planetesimals Planner")
+                    .intervalTicks(SCAN_INTERVAL_TICKS).execute(this::scan)
+                    .submit(plugin);
+        }
+    }
+
+    /**
+     * Drops plans that haven't started and waits for the running ones.
+     * Running plans aren't interrupted, since that would close the planet
+     * storage channels they are reading from.
+     */
+    public synchronized void stop() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        // A cancelled plan that is still queued is skipped by its worker.
+        this.plans.values().forEach(plans -> plans.values()
+                .forEach(plan -> plan.cancel(false)));
+        this.plans.clear();
+        this.workers.shutdown();
+        try {
+            this.workers.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Map<Vector3i, CompletableFuture<List<PlannedPlanet>>>
+            getPlans(World world) {
+        return this.plans.computeIfAbsent(world.getUniqueId(),
+                id -> new ConcurrentHashMap<>());
+    }
+
+    /**
+     * Starts plans for the chunks around every player that haven't been
+     * populated, and drops plans that are no longer near anyone.
+     */
+    private void scan() {
+        ChunkLayout layout = Sponge.getServer().getChunkLayout();
+        Map<UUID, LongHashSet> wanted = new HashMap<>();
+        for (Player player : Sponge.getServer().getOnlinePlayers()) {
+            World world = player.getWorld();
+            if (!world.getProperties().getGeneratorModifiers()
+                    .contains(PlanetGenerator.INSTANCE)) {
+                continue;
+            }
+            LongHashSet chunks = wanted.computeIfAbsent(world.getUniqueId(),
+                    id -> new LongHashSet());
+            Map<Vector3i, CompletableFuture<List<PlannedPlanet>>> plans =
+                    getPlans(world);
+            PopulatedChunks populated = this.populator.getContext()
+                    .getPopulatedChunks(world);
+            Vector3i center = layout
+                    .forceToChunk(player.getLocation().getBlockPosition());
+            for (int x = -this.radius; x <= this.radius; x++) {
+                for (int z = -this.radius; z <= this.radius; z++) {
+                    Vector3i chunk = center.add(x, 0, z);
+                    chunks.add(ChunkKey.pack(chunk));
+                    // Unloaded chunks can still be populated already, and
+                    // would never use their plan.
+                    if (plans.size() >= MAX_PLANS
+                            || plans.containsKey(chunk)
+                            || populated.isPopulated(chunk)
+                            || world.getChunk(chunk).isPresent()) {
+                        continue;
+                    }
+                    plans.put(chunk, CompletableFuture.supplyAsync(
+                            () -> plan(world, chunk), this.workers));
+                }
+            }
+        }
+        this.plans.forEach((world, plans) -> {
+            LongHashSet keep = wanted.get(world);
+            plans.keySet().removeIf(chunk -> {
+                if (keep != null && keep.contains(ChunkKey.pack(chunk))) {
+                    return false;
+                }
+                CompletableFuture<?> plan = plans.get(chunk);
+                if (plan != null) {
+                    plan.cancel(false);
+                }
+                return true;
+            });
+        });
+    }
+
+    /**
+     * Gets the plan for {@code chunk}, planning it now if it wasn't ready.
+     * The planned planets still have to be checked against planets placed
+     * since, and recorded, before they are drawn.
+     */
+    public List<PlannedPlanet> take(World world, Vector3i chunk) {
+        GenerationMetrics metrics =
+                this.populator.getContext().getMetrics();
+        CompletableFuture<List<PlannedPlanet>> plan =
+                getPlans(world).remove(chunk);
+        if (plan != null && plan.isDone() && !plan.isCompletedExceptionally()) {
+            metrics.getPlanHits().increment();
+            return plan.join();
+        }
+        if (plan != null) {
+            plan.cancel(false);
+        }
+        metrics.getPlanMisses().increment();
+        return plan(world, chunk);
+    }
+
+    private List<PlannedPlanet> plan(World world, Vector3i chunk) {
+        ChunkLayout layout = this.populator.getContext().getChunkLayout();
+        Vector3i blockMin = chunk.mul(layout.getChunkSize());
+        Random random = new Random(world.getProperties().getSeed()
+                ^ chunk.getX() * 341873128712L
+                ^ chunk.getZ() * 132897987541L);
+        int x = blockMin.getX() + 8;
+        int z = blockMin.getZ() + 8;
+        int minY = this.populator.getMin().getY();
+        int heightRange = this.populator.getMax().getY() - minY;
+        List<PlannedPlanet> planned = new ArrayList<>();
+        for (int i = 0; i < PlanetPopulator.ATTEMPTS_PER_CHUNK; i++) {
+            if (random.nextDouble() >= PlanetPopulator.SPAWN_CHANCE) {
+                continue;
+            }
+            int x0 = x + random.nextInt(16);
+            int y0 = minY + random.nextInt(heightRange);
+            int z0 = z + random.nextInt(16);
+            if (!this.populator.canPlaceAt(world, x0, y0, z0)) {
+                continue;
+            }
+            Planet planet = this.populator.createPlanet(random, x0, y0, z0);
+            planned.add(new PlannedPlanet(planet,
+                    this.populator.isChunkLocal() ? null
+                            : this.populator.draw(world, planet)));
+        }
+        return ImmutableList.copyOf(planned);
+    }
+
+    /**
+     * Places the planned planets of {@code chunk}. Their blocks are written
+     * by the {@link PlanetApplyQueue}, or with chunk-local writes by the
+     * {@link PlanetChunkPopulator} that runs next.
+     */
+    public void apply(World world, Vector3i chunk) {
+        PlanetContext context = this.populator.getContext();
+        GenerationMetrics metrics = context.getMetrics();
+        long start = System.nanoTime();
+        for (PlannedPlanet planned : take(world, chunk)) {
+            // Counted on its own, as the plan already counted the attempt.
+            metrics.getPlanRechecks().increment();
+            if (!this.populator.canStillPlace(world, planned.getPlanet())) {
+                // Another plan claimed the spot first.
+                metrics.getPlanRecheckRejections().increment();
+                continue;
+            }
+            this.populator.record(world, planned.getPlanet());
+            if (planned.getBlocks() != null) {
+                context.getApplyQueue().submit(world.getUniqueId(),
+                        planned.getBlocks(), true);
+            }
+        }
+        metrics.getPlanApply().recordSince(start);
+    }
+
+}
@@ -24,34 +24,92 @@
  */
 package me.kenzierocks.plugins.planetesimals.worldgen;
 
-import java.util.Optional;
+import java.util.List;
 import java.util.Random;
+import java.util.UUID;
 
-import org.jooq.DSLContext;
-import org.jooq.Record4;
-import org.jooq.Result;
-import org.spongepowered.api.Sponge;
-import org.spongepowered.api.block.BlockTypes;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.ChunkLayout;
 import org.spongepowered.api.world.World;
 import org.spongepowered.api.world.gen.PopulatorObject;
 
 import com.flowpowered.math.vector.Vector3i;
 
-import me.kenzierocks.plugins.planetesimals.Database;
 import me.kenzierocks.plugins.planetesimals.Planetesimals;
-import me.kenzierocks.plugins.planetesimals.world.ChunkBoundary;
+import me.kenzierocks.plugins.planetesimals.worldgen.data.PlanetIndex;
 
 public class PlanetPopulator implements PopulatorObject {
 
-    static final int MAX_RADIUS = 15;
-    static final Vector3i MIN =
-            Sponge.getServer().getChunkLayout().getSpaceMin()
-                    .mul(Sponge.getServer().getChunkLayout().getChunkSize())
-                    .add(MAX_RADIUS, MAX_RADIUS, MAX_RADIUS);
-    static final Vector3i MAX =
-            Sponge.getServer().getChunkLayout().getSpaceMax()
-                    .mul(Sponge.getServer().getChunkLayout().getChunkSize())
-                    .sub(MAX_RADIUS, MAX_RADIUS, MAX_RADIUS);
+    public static final int MAX_RADIUS = 15;
+    static final int ATTEMPTS_PER_CHUNK = 10;
+    static final double SPAWN_CHANCE = 0.2;
+
+    /**
+     * The lowest planet center that keeps the whole planet in the world.
+     */
+    static Vector3i getMin(ChunkLayout layout) {
+        return layout.getSpaceMin().mul(layout.getChunkSize()).add(MAX_RADIUS,
+                MAX_RADIUS, MAX_RADIUS);
+    }
+
+    /**
+     * The highest planet center that keeps the whole planet in the world.
+     */
+    static Vector3i getMax(ChunkLayout layout) {
+        return layout.getSpaceMax().add(Vector3i.ONE)
+                .mul(layout.getChunkSize()).sub(MAX_RADIUS + 1,
+                        MAX_RADIUS + 1, MAX_RADIUS + 1);
+    }
+
+    private final PlanetContext context;
+    private final ChunkLayout layout;
+    private final Vector3i min;
+    private final Vector3i max;
+    private final PlanetDesign design;
+    private final boolean filled;
+    private final boolean chunkLocal;
+    private final int parallelRadius;
+
+    /**
+     * @param chunkLocal - if set, placing a planet writes no blocks, and
+     *        {@link #populateChunk(Chunk)} draws each chunk's parts of
+     *        planets as it is populated. Spots whose planet could reach a
+     *        chunk that's already populated are rejected, since that chunk
+     *        would never get its part.
+     * @param parallelRadius - planets at least this large are drawn by the
+     *        {@link ParallelVoxelizer} and written by the
+     *        {@link PlanetApplyQueue}, or {@code 0} to draw all of them
+     *        immediately
+     */
+    public PlanetPopulator(PlanetContext context, PlanetStyle style,
+            boolean chunkLocal, int parallelRadius) {
+        this(context, style.getDesign(), style.isFilled(), chunkLocal,
+                parallelRadius);
+    }
+
+    public PlanetPopulator(PlanetContext context, PlanetDesign design,
+            boolean filled, boolean chunkLocal, int parallelRadius) {
+        this.context = context;
+        this.layout = context.getChunkLayout();
+        this.min = getMin(this.layout);
+        this.max = getMax(this.layout);
+        this.design = design;
+        this.filled = filled;
+        this.chunkLocal = chunkLocal;
+        this.parallelRadius = parallelRadius;
+    }
+
+    public PlanetContext getContext() {
+        return this.context;
+    }
+
+    public Vector3i getMin() {
+        return this.min;
+    }
+
+    public Vector3i getMax() {
+        return this.max;
+    }
 
     @Override
     public String getId() {
@@ -65,87 +123,202 @@ public class PlanetPopulator implements PopulatorObject {
 
     @Override
     public boolean canPlaceAt(World world, int x, int y, int z) {
-        Optional<ChunkBoundary> chunkB = Sponge.getServer().getChunkLayout()
-                .toChunk(x, y, z).map(ChunkBoundary::create);
-        if (!chunkB.isPresent()) {
+        GenerationMetrics metrics = this.context.getMetrics();
+        metrics.getAttempts().increment();
+        long start = System.nanoTime();
+        boolean placeable = checkPlacement(world, x, y, z, true);
+        metrics.getCollisionCheck().recordSince(start);
+        if (!placeable) {
+            metrics.getRejections().increment();
+        }
+        return placeable;
+    }
+
+    /**
+     * Checks a planned planet against planets placed since it passed
+     * {@link #canPlaceAt(World, int, int, int)}, without counting it as
+     * another attempt.
+     */
+    public boolean canStillPlace(World world, Planet planet) {
+        Vector3i pos = planet.getPosition();
+        return checkPlacement(world, pos.getX(), pos.getY(), pos.getZ(),
+                false);
+    }
+
+    /**
+     * Runs the placement checks cheapest first: the world bounds, then for
+     * chunk-local writes the populated chunks, then the occupancy bitmap,
+     * which accepts any spot no planet reaches near, and only then the
+     * exact collision check against the index. The outcome is only counted
+     * if {@code count} is set.
+     */
+    private boolean checkPlacement(World world, int x, int y, int z,
+            boolean count) {
+        GenerationMetrics metrics = this.context.getMetrics();
+        Vector3i min = this.min;
+        Vector3i max = this.max;
+        if (x < min.getX() || y < min.getY() || z < min.getZ()
+                || x > max.getX() || y > max.getY() || z > max.getZ()) {
+            if (count) {
+                metrics.getBoundsRejections().increment();
+            }
+            return false;
+        }
+        if (this.chunkLocal && this.context.getPopulatedChunks(world)
+                .isAnyPopulated(
+                        this.layout.forceToChunk(x - MAX_RADIUS,
+                                y - MAX_RADIUS, z - MAX_RADIUS),
+                        this.layout.forceToChunk(x + MAX_RADIUS,
+                                y + MAX_RADIUS, z + MAX_RADIUS))) {
+            if (count) {
+                metrics.getPopulatedRejections().increment();
+            }
             return false;
         }
-        ChunkBoundary chunk = chunkB.get();
-        DSLContext db = Planetesimals.getInstance().getDatabase().getDB();
-        Vector3i chunkMin = chunk.getChunkMin();
-        Result<Record4<Integer, Integer, Integer, Integer>> selectedPlanets = db
-                .select(Database.PLANET_X_FIELD, Database.PLANET_Y_FIELD,
-                        Database.PLANET_Z_FIELD, Database.PLANET_RADIUS_FIELD)
-                .from(Database.PLANETS_TABLE)
-                .where(Database.CHUNK_X_FIELD.equal(chunkMin.getX()),
-                        Database.CHUNK_Y_FIELD.equal(chunkMin.getY()),
-                        Database.CHUNK_Z_FIELD.equal(chunkMin.getZ()))
-                .fetch();
-        Vector3i pos = new Vector3i(x, y, z);
-        if (selectedPlanets.stream().map(this::planetFromRecord)
-                .anyMatch(p -> spheresInMaxRadius(pos, p))) {
-            Planetesimals.getInstance().getLogger()
-                    .info("Hey Hey Hey FALSE " + pos);
+        PlanetIndex index = this.context.getPlanetIndex(world);
+        // A planet touching the new one reaches into its bounding box.
+        if (!index.getOccupancy().isAnyOccupied(
+                this.layout.forceToChunk(x - MAX_RADIUS, y - MAX_RADIUS,
+                        z - MAX_RADIUS),
+                this.layout.forceToChunk(x + MAX_RADIUS, y + MAX_RADIUS,
+                        z + MAX_RADIUS))) {
+            if (count) {
+                metrics.getPrefilterPasses().increment();
+            }
+            return true;
+        }
+        // Any planet centered closer than this could touch the new one.
+        int reach = MAX_RADIUS * 2;
+        Vector3i minChunk =
+                this.layout.forceToChunk(x - reach, y - reach, z - reach);
+        Vector3i maxChunk =
+                this.layout.forceToChunk(x + reach, y + reach, z + reach);
+        if (index.intersectsAny(minChunk, maxChunk, x, y, z, MAX_RADIUS)) {
+            if (count) {
+                metrics.getCollisionRejections().increment();
+            }
             return false;
         }
-        Planetesimals.getInstance().getLogger().info("Hyaaaay TRUE " + pos);
-        return MIN.compareTo(pos) < 0 && MAX.compareTo(pos) > 0;
+        return true;
     }
 
     @Override
     public void placeObject(World world, Random random, int x, int y, int z) {
         // expensive debug check
         // checkState(canPlaceAt(world, x, y, z), "you fail, sponge.");
+        Planet planet = createPlanet(random, x, y, z);
+        record(world, planet);
+        if (this.chunkLocal) {
+            // Drawn by populateChunk, one chunk at a time.
+            return;
+        }
+        if (this.parallelRadius > 0
+                && planet.getRadius() >= this.parallelRadius) {
+            drawLater(world, planet);
+            return;
+        }
+        ChunkedBlockWriter writer = draw(world, planet);
+        long start = System.nanoTime();
+        writer.apply(world, true);
+        this.context.getMetrics().getBlockWrites().recordSince(start);
+    }
+
+    public boolean isChunkLocal() {
+        return this.chunkLocal;
+    }
+
+    /**
+     * Picks the planet to place at a spot that passed
+     * {@link #canPlaceAt(World, int, int, int)}.
+     */
+    public Planet createPlanet(Random random, int x, int y, int z) {
         int radius = random.nextInt(MAX_RADIUS);
-        Planet planet = Planet.create(new Vector3i(x, y, z), radius);
-        DSLContext db = Planetesimals.getInstance().getDatabase().getDB();
-        Vector3i chunkPos =
-                Sponge.getServer().getChunkLayout().toChunk(x, y, z)
-                        .orElseThrow(() -> new IllegalStateException(
-                                "What? " + x + ", " + y + ", " + z
-                                        + " isn't in a chunk!"));
-        db.update(Database.PLANETS_TABLE)
-                .set(Database.CHUNK_X_FIELD, chunkPos.getX())
-                .set(Database.CHUNK_Y_FIELD, chunkPos.getY())
-                .set(Database.CHUNK_Z_FIELD, chunkPos.getZ())
-                .set(Database.PLANET_X_FIELD, planet.getPosition().getX())
-                .set(Database.PLANET_Y_FIELD, planet.getPosition().getY())
-                .set(Database.PLANET_Z_FIELD, planet.getPosition().getZ())
-                .set(Database.PLANET_RADIUS_FIELD, planet.getRadius());
-        ShapeHelper.makeSphere(planet.getPosition(),
-                PlanetDesign.of(BlockTypes.STONE), planet.getRadius(), true,
-                (pos, state) -> {
-                    if (world.containsBlock(pos)) {
-                        world.setBlock(pos, state, false);
+        return Planet.create(new Vector3i(x, y, z), radius);
+    }
+
+    /**
+     * Adds {@code planet} to the index and queues it for storage, so later
+     * placements see it.
+     */
+    public void record(World world, Planet planet) {
+        Vector3i pos = planet.getPosition();
+        Vector3i chunkPos = this.layout.toChunk(pos)
+                .orElseThrow(() -> new IllegalStateException(
+                        "What? " + pos + " isn't in a chunk!"));
+        this.context.getPlanetIndex(world).add(chunkPos, planet);
+        this.context.getMetrics().getPlacements().increment();
+    }
+
+    /**
+     * Rasterizes {@code planet} without touching the world. Safe to call
+     * off the server thread.
+     */
+    public ChunkedBlockWriter draw(World world, Planet planet) {
+        long start = System.nanoTime();
+        ChunkedBlockWriter writer =
+                new ChunkedBlockWriter(this.layout.getChunkSize(),
+                        world.getBlockMin(), world.getBlockMax());
+        ShapeHelper.makeSphere(planet.getPosition(), this.design,
+                planet.getRadius(), this.filled, writer);
+        this.context.getMetrics().getVoxelization().recordSince(start);
+        return writer;
+    }
+
+    private void drawLater(World world, Planet planet) {
+        PlanetContext context = this.context;
+        UUID worldId = world.getUniqueId();
+        context.getVoxelizer().voxelize(planet, this.design, this.filled,
+                this.layout.getChunkSize(), world.getBlockMin(),
+                world.getBlockMax()).whenComplete((writer, error) -> {
+                    if (error != null) {
+                        context.getLogger().error(
+                                "Failed to draw planet " + planet, error);
+                        return;
                     }
+                    context.getApplyQueue().submit(worldId, writer, true);
                 });
     }
 
-    private Planet planetFromRecord(
-            Record4<Integer, Integer, Integer, Integer> record) {
-        return Planet.create(
-                new Vector3i(record.value1(), record.value2(), record.value3()),
-                record.value4());
-    }
-
-    // private boolean spheresTouch(Planet x, Planet z) {
-    // int d2 = x.getPosition().distanceSquared(z.getPosition());
-    // int targetRad = (x.getRadius() + z.getRadius())
-    // * (x.getRadius() + z.getRadius());
-    // if (d2 <= targetRad) {
-    // return true;
-    // }
-    // return false;
-    // }
-
-    private boolean spheresInMaxRadius(Vector3i pos, Planet z) {
-        int d2 = z.getPosition().distanceSquared(pos);
-        int subTargetRad = MAX_RADIUS + z.getRadius();
-        int targetRad = subTargetRad * subTargetRad;
-        if (d2 <= targetRad) {
-            return true;
+    /**
+     * Marks {@code chunk} populated, and for chunk-local writes draws the
+     * parts of placed planets that fall in it. Runs after planets are
+     * placed in the chunk, so it draws those too.
+     */
+    public void populateChunk(Chunk chunk) {
+        World world = chunk.getWorld();
+        if (!this.chunkLocal) {
+            this.context.getPopulatedChunks(world).add(chunk.getPosition());
+            return;
+        }
+        Vector3i min = chunk.getBlockMin();
+        Vector3i max = chunk.getBlockMax();
+        ChunkLayout layout = this.layout;
+        List<Planet> planets = this.context.getPlanetIndex(world)
+                .getPlanets(
+                        layout.forceToChunk(min.sub(MAX_RADIUS, MAX_RADIUS,
+                                MAX_RADIUS)),
+                        layout.forceToChunk(max.add(MAX_RADIUS, MAX_RADIUS,
+                                MAX_RADIUS)));
+        ChunkedBlockWriter writer =
+                new ChunkedBlockWriter(layout.getChunkSize(), min, max);
+        for (Planet planet : planets) {
+            Vector3i pos = planet.getPosition();
+            int r = planet.getRadius();
+            if (pos.getX() + r < min.getX() || pos.getX() - r > max.getX()
+                    || pos.getY() + r < min.getY()
+                    || pos.getY() - r > max.getY()
+                    || pos.getZ() + r < min.getZ()
+                    || pos.getZ() - r > max.getZ()) {
+                continue;
+            }
+            ShapeHelper.makeSphere(pos, this.design, r, this.filled, writer);
         }
-        return false;
+        long start = System.nanoTime();
+        writer.apply(world, false);
+        this.context.getMetrics().getBlockWrites().recordSince(start);
+        // Marked last, so every planet placed up to now is drawn, and later
+        // ones can't reach into it.
+        this.context.getPopulatedChunks(world).add(chunk.getPosition());
     }
 
 }
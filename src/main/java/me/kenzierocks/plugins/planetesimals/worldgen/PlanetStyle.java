@@ -0,0 +1,70 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import org.spongepowered.api.block.BlockTypes;
+
+public enum PlanetStyle {
+
+    SOLID(true) {
+
+        @Override
+        public PlanetDesign getDesign() {
+            return PlanetDesign.of(BlockTypes.STONE);
+        }
+
+    },
+    HOLLOW(false) {
+
+        @Override
+        public PlanetDesign getDesign() {
+            return PlanetDesign.of(BlockTypes.STONE);
+        }
+
+    },
+    LAYERED(true) {
+
+        @Override
+        public PlanetDesign getDesign() {
+            return PlanetDesign.layered(BlockTypes.STONE,
+                    BlockTypes.NETHERRACK, BlockTypes.OBSIDIAN);
+        }
+
+    };
+
+    private final boolean filled;
+
+    PlanetStyle(boolean filled) {
+        this.filled = filled;
+    }
+
+    public boolean isFilled() {
+        return this.filled;
+    }
+
+    // Not a field, the block types aren't registered until the game starts.
+    public abstract PlanetDesign getDesign();
+
+}
@@ -0,0 +1,352 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.scheduler.Task;
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.Planetesimals;
+
+/**
+ * Generates the chunks of a world in a square spiral around a center chunk,
+ * a few per tick. Progress is the number of spiral steps done, saved to a
+ * file so a paused or interrupted run carries on where it stopped.
+ *
+ * <p>
+ * A chunk is only populated once the chunks at +x, +z and +x+z are loaded
+ * with it, and those can be a ring further out. So the spiral goes one
+ * ring past the radius, and always keeps at least the last two rings
+ * loaded, however small the configured window is. Chunks inside the radius
+ * that were unloaded without being populated are counted and reported.
+ * </p>
+ */
+public class Pregenerator {
+
+    private static final long SAVE_INTERVAL_NANOS =
+            TimeUnit.SECONDS.toNanos(10);
+    private static final long REPORT_INTERVAL_NANOS =
+            TimeUnit.SECONDS.toNanos(30);
+
+    /**
+     * Gets the offset from the center of spiral step {@code index}. Step 0
+     * is the center, then each ring of chunks around it in turn.
+     */
+    static Vector3i spiral(long index) {
+        if (index == 0) {
+            return Vector3i.ZERO;
+        }
+        int ring = (int) Math.ceil((Math.sqrt(index + 1) - 1) / 2);
+        // Fix up rounding in the square root.
+        while ((2L * ring + 1) * (2L * ring + 1) <= index) {
+            ring++;
+        }
+        while ((2L * ring - 1) * (2L * ring - 1) > index) {
+            ring--;
+        }
+        long start = (2L * ring - 1) * (2L * ring - 1);
+        int side = (int) ((index - start) / (2 * ring));
+        int offset = (int) ((index - start) % (2 * ring));
+        switch (side) {
+            case 0:
+                return new Vector3i(ring, 0, offset + 1 - ring);
+            case 1:
+                return new Vector3i(ring - 1 - offset, 0, ring);
+            case 2:
+                return new Vector3i(-ring, 0, ring - 1 - offset);
+            default:
+                return new Vector3i(offset + 1 - ring, 0, -ring);
+        }
+    }
+
+    public static Path getProgressFile(Path directory, UUID world) {
+        return directory.resolve(world + ".properties");
+    }
+
+    /**
+     * Loads a saved run, if there is one.
+     */
+    public static Optional<Pregenerator> load(Path directory, World world) {
+        Path file = getProgressFile(directory, world.getUniqueId());
+        if (!Files.exists(file)) {
+            return Optional.empty();
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            props.load(in);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Pregenerator pregen = new Pregenerator(directory, world,
+                Integer.parseInt(props.getProperty("radius")),
+                new Vector3i(Integer.parseInt(props.getProperty("center-x")),
+                        0, Integer.parseInt(props.getProperty("center-z"))));
+        pregen.next = Long.parseLong(props.getProperty("next"));
+        pregen.planets = Long.parseLong(props.getProperty("planets", "0"));
+        pregen.unpopulated =
+                Long.parseLong(props.getProperty("unpopulated", "0"));
+        pregen.running =
+                Boolean.parseBoolean(props.getProperty("running", "false"));
+        return Optional.of(pregen);
+    }
+
+    private final Path directory;
+    private final World world;
+    private final int radius;
+    private final Vector3i center;
+    private final long total;
+    private final Deque<Chunk> loaded = new ArrayDeque<>();
+    private long next;
+    private long planets;
+    private long unpopulated;
+    private boolean running;
+    private Task task;
+    // Rates are measured from when the run was last started.
+    private long startNanos;
+    private long startIndex;
+    private long startSubmitted;
+    private long lastSubmitted;
+    private long lastSave;
+    private long lastReport;
+
+    /**
+     * @param radius - the radius of the square to generate, in chunks
+     * @param center - the chunk at the center of the spiral
+     */
+    public Pregenerator(Path directory, World world, int radius,
+            Vector3i center) {
+        this.directory = directory;
+        this.world = world;
+        this.radius = radius;
+        this.center = center;
+        // The extra ring is loaded so the last ring inside gets populated.
+        this.total = (2L * radius + 3) * (2L * radius + 3);
+    }
+
+    public World getWorld() {
+        return this.world;
+    }
+
+    public int getRadius() {
+        return this.radius;
+    }
+
+    public boolean isRunning() {
+        return this.running;
+    }
+
+    public boolean isDone() {
+        return this.next >= this.total;
+    }
+
+    /**
+     * Starts or resumes generating.
+     *
+     * @param window - how many generated chunks may stay loaded at once
+     * @param budgetMillis - time spent generating per tick
+     */
+    public void start(Object plugin, int window, long budgetMillis) {
+        if (this.task != null) {
+            return;
+        }
+        this.running = true;
+        this.startNanos = System.nanoTime();
+        this.startIndex = this.next;
+        this.startSubmitted = this.lastSubmitted = submitted();
+        this.lastSave = this.lastReport = this.startNanos;
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        this.task = Sponge.getScheduler().createTaskBuilder()
+                .name("Planetesimals Pregen " + this.world.getName())
+                .intervalTicks(1).execute(() -> tick(window, budgetNanos))
+                .submit(plugin);
+        save();
+    }
+
+    /**
+     * Pauses generating and saves progress.
+     */
+    public void pause() {
+        this.running = false;
+        stopTask();
+        save();
+    }
+
+    /**
+     * Stops generating for a shutdown. A running pregen is still marked as
+     * running, so it resumes when the server next starts.
+     */
+    public void stop() {
+        stopTask();
+        save();
+    }
+
+    private void stopTask() {
+        if (this.task != null) {
+            this.task.cancel();
+            this.task = null;
+        }
+        while (!this.loaded.isEmpty()) {
+            this.world.unloadChunk(this.loaded.removeFirst());
+        }
+    }
+
+    /**
+     * How many chunks have to stay loaded for every chunk before the ring
+     * of the next step to have been populated: that ring and the one
+     * before it, 8 chunks per unit of ring radius each.
+     */
+    private int getMinWindow() {
+        Vector3i step = spiral(this.next);
+        int ring = Math.max(Math.abs(step.getX()), Math.abs(step.getZ()));
+        return 16 * ring + 8;
+    }
+
+    private void unloadEldest() {
+        Chunk chunk = this.loaded.removeFirst();
+        Vector3i offset = chunk.getPosition().sub(this.center);
+        if (Math.abs(offset.getX()) <= this.radius
+                && Math.abs(offset.getZ()) <= this.radius
+                && !Planetesimals.getInstance().getPopulatedChunks(this.world)
+                        .isPopulated(chunk.getPosition())) {
+            this.unpopulated++;
+        }
+        this.world.unloadChunk(chunk);
+    }
+
+    private static long submitted() {
+        return Planetesimals.getInstance().getPlanetWriter()
+                .getSubmittedCount();
+    }
+
+    private void tick(int window, long budgetNanos) {
+        long now = System.nanoTime();
+        long deadline = now + budgetNanos;
+        while (!isDone() && System.nanoTime() < deadline) {
+            Vector3i chunk = this.center.add(spiral(this.next));
+            this.world.loadChunk(chunk, true).ifPresent(this.loaded::addLast);
+            this.next++;
+            int keep = Math.max(window, getMinWindow());
+            while (this.loaded.size() > keep) {
+                unloadEldest();
+            }
+        }
+        long submitted = submitted();
+        this.planets += submitted - this.lastSubmitted;
+        this.lastSubmitted = submitted;
+        if (isDone()) {
+            // Everything left is populated now, apart from the extra ring.
+            while (!this.loaded.isEmpty()) {
+                unloadEldest();
+            }
+            Planetesimals.getInstance().getLogger()
+                    .info("Pregen finished. " + getStatus());
+            if (this.unpopulated > 0) {
+                Planetesimals.getInstance().getLogger().warn(this.unpopulated
+                        + " pregenerated chunks were unloaded before they"
+                        + " were populated, and have no planets.");
+            }
+            pause();
+            return;
+        }
+        if (now - this.lastSave >= SAVE_INTERVAL_NANOS) {
+            this.lastSave = now;
+            save();
+        }
+        if (now - this.lastReport >= REPORT_INTERVAL_NANOS) {
+            this.lastReport = now;
+            Planetesimals.getInstance().getLogger().info(getStatus());
+        }
+    }
+
+    /**
+     * Describes progress, rates and the estimated time left.
+     */
+    public String getStatus() {
+        StringBuilder status = new StringBuilder("Pregen of ")
+                .append(this.world.getName()).append(": ").append(this.next)
+                .append('/').append(this.total).append(" chunks (")
+                .append(this.next * 100 / this.total).append("%), ")
+                .append(this.planets).append(" planets");
+        if (this.unpopulated > 0) {
+            status.append(", ").append(this.unpopulated)
+                    .append(" unpopulated");
+        }
+        if (this.task == null) {
+            return status.append(isDone() ? ", done" : ", paused").toString();
+        }
+        double seconds = (System.nanoTime() - this.startNanos) / 1e9;
+        if (seconds <= 0) {
+            return status.toString();
+        }
+        double chunkRate = (this.next - this.startIndex) / seconds;
+        double planetRate = (this.lastSubmitted - this.startSubmitted)
+                / seconds;
+        status.append(String.format(", %.1f chunks/s, %.1f planets/s",
+                chunkRate, planetRate));
+        if (chunkRate > 0) {
+            long eta = (long) ((this.total - this.next) / chunkRate);
+            status.append(String.format(", ETA %d:%02d:%02d", eta / 3600,
+                    eta / 60 % 60, eta % 60));
+        }
+        return status.toString();
+    }
+
+    private void save() {
+        Properties props = new Properties();
+        props.setProperty("radius", Integer.toString(this.radius));
+        props.setProperty("center-x", Integer.toString(this.center.getX()));
+        props.setProperty("center-z", Integer.toString(this.center.getZ()));
+        props.setProperty("next", Long.toString(this.next));
+        props.setProperty("planets", Long.toString(this.planets));
+        props.setProperty("unpopulated", Long.toString(this.unpopulated));
+        props.setProperty("running", Boolean.toString(this.running));
+        try {
+            Files.createDirectories(this.directory);
+            try (OutputStream out = Files.newOutputStream(getProgressFile(
+                    this.directory, this.world.getUniqueId()))) {
+                props.store(out, "Planetesimals pregen progress");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
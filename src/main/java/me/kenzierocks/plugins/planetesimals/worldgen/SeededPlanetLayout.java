@@ -0,0 +1,130 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.function.Consumer;
+
+import com.flowpowered.math.vector.Vector3i;
+
+/**
+ * Lays planets out on a jittered grid derived only from the world seed.
+ * Space is split into cubic cells, each holding at most one planet that fits
+ * entirely inside it, so planets never collide and any area can work out
+ * which planets touch it without looking anything up.
+ */
+public class SeededPlanetLayout {
+
+    public static final int CELL_SIZE = PlanetPopulator.MAX_RADIUS * 2 + 2;
+    private static final double PLANET_CHANCE = 0.5;
+
+    private static long mix(long z) {
+        // SplitMix64 finalizer
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private final long worldSeed;
+    private final long seed;
+    private final Vector3i min;
+    private final Vector3i max;
+
+    /**
+     * @param min - the lowest allowed planet center
+     * @param max - the highest allowed planet center
+     */
+    public SeededPlanetLayout(long seed, Vector3i min, Vector3i max) {
+        this.worldSeed = seed;
+        this.seed = mix(seed);
+        this.min = min;
+        this.max = max;
+    }
+
+    public long getWorldSeed() {
+        return this.worldSeed;
+    }
+
+    /**
+     * Passes every planet whose sphere may overlap the block box from
+     * {@code blockMin} to {@code blockMax}, inclusive, to {@code consumer}.
+     */
+    public void forEachPlanetNear(Vector3i blockMin, Vector3i blockMax,
+            Consumer<Planet> consumer) {
+        int minX = Math.floorDiv(blockMin.getX(), CELL_SIZE);
+        int minY = Math.floorDiv(blockMin.getY(), CELL_SIZE);
+        int minZ = Math.floorDiv(blockMin.getZ(), CELL_SIZE);
+        int maxX = Math.floorDiv(blockMax.getX(), CELL_SIZE);
+        int maxY = Math.floorDiv(blockMax.getY(), CELL_SIZE);
+        int maxZ = Math.floorDiv(blockMax.getZ(), CELL_SIZE);
+        // Planets stay inside their cell, so only overlapping cells count.
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    Planet planet = getPlanet(x, y, z);
+                    if (planet != null) {
+                        consumer.accept(planet);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the planet in the given cell, or {@code null} if it has none.
+     */
+    public Planet getPlanet(int cellX, int cellY, int cellZ) {
+        long state = this.seed;
+        state = mix(state ^ cellX * GOLDEN_GAMMA);
+        state = mix(state ^ cellY * GOLDEN_GAMMA);
+        state = mix(state ^ cellZ * GOLDEN_GAMMA);
+        state += GOLDEN_GAMMA;
+        if ((mix(state) >>> 11) * 0x1.0p-53 >= PLANET_CHANCE) {
+            return null;
+        }
+        state += GOLDEN_GAMMA;
+        int radius = bounded(mix(state), PlanetPopulator.MAX_RADIUS);
+        // The free space left in the cell once the planet fits inside it.
+        int slack = CELL_SIZE - 2 * radius - 1;
+        state += GOLDEN_GAMMA;
+        int x = cellX * CELL_SIZE + radius + bounded(mix(state), slack);
+        state += GOLDEN_GAMMA;
+        int y = cellY * CELL_SIZE + radius + bounded(mix(state), slack);
+        state += GOLDEN_GAMMA;
+        int z = cellZ * CELL_SIZE + radius + bounded(mix(state), slack);
+        if (x < this.min.getX() || y < this.min.getY() || z < this.min.getZ()
+                || x > this.max.getX() || y > this.max.getY()
+                || z > this.max.getZ()) {
+            return null;
+        }
+        return Planet.create(new Vector3i(x, y, z), radius);
+    }
+
+    private static int bounded(long random, int bound) {
+        return (int) ((random >>> 33) * bound >>> 31);
+    }
+
+}
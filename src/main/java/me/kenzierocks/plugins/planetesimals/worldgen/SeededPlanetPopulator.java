@@ -0,0 +1,104 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen;
+
+import java.util.Random;
+
+import org.spongepowered.api.world.Chunk;
+import org.spongepowered.api.world.ChunkLayout;
+import org.spongepowered.api.world.World;
+import org.spongepowered.api.world.gen.Populator;
+import org.spongepowered.api.world.gen.PopulatorType;
+import org.spongepowered.api.world.gen.PopulatorTypes;
+
+import com.flowpowered.math.vector.Vector3i;
+
+/**
+ * Draws the planets of a {@link SeededPlanetLayout} into each chunk as it is
+ * populated. Nothing is read back from storage. Planets can optionally be
+ * recorded, once, by the chunk holding their center.
+ */
+public class SeededPlanetPopulator implements Populator {
+
+    private final PlanetContext context;
+    private final PlanetDesign design;
+    private final boolean filled;
+    private final boolean record;
+    private volatile SeededPlanetLayout layout;
+
+    public SeededPlanetPopulator(PlanetContext context, PlanetStyle style,
+            boolean record) {
+        this.context = context;
+        this.design = style.getDesign();
+        this.filled = style.isFilled();
+        this.record = record;
+    }
+
+    @Override
+    public PopulatorType getType() {
+        return PopulatorTypes.GENERIC_OBJECT;
+    }
+
+    private SeededPlanetLayout getLayout(World world) {
+        long seed = world.getProperties().getSeed();
+        SeededPlanetLayout layout = this.layout;
+        if (layout == null || layout.getWorldSeed() != seed) {
+            ChunkLayout chunkLayout = this.context.getChunkLayout();
+            layout = new SeededPlanetLayout(seed,
+                    PlanetPopulator.getMin(chunkLayout),
+                    PlanetPopulator.getMax(chunkLayout));
+            this.layout = layout;
+        }
+        return layout;
+    }
+
+    @Override
+    public void populate(Chunk chunk, Random random) {
+        World world = chunk.getWorld();
+        Vector3i min = chunk.getBlockMin();
+        Vector3i max = chunk.getBlockMax();
+        ChunkLayout chunkLayout = this.context.getChunkLayout();
+        GenerationMetrics metrics = this.context.getMetrics();
+        long start = System.nanoTime();
+        ChunkedBlockWriter writer =
+                new ChunkedBlockWriter(chunkLayout.getChunkSize(), min, max);
+        getLayout(world).forEachPlanetNear(min, max, planet -> {
+            ShapeHelper.makeSphere(planet.getPosition(), this.design,
+                    planet.getRadius(), this.filled, writer);
+            if (this.record && chunkLayout.forceToChunk(planet.getPosition())
+                    .equals(chunk.getPosition())) {
+                this.context.getPlanetIndex(world).add(chunk.getPosition(),
+                        planet);
+                metrics.getPlacements().increment();
+            }
+        });
+        metrics.getVoxelization().recordSince(start);
+        start = System.nanoTime();
+        writer.apply(world, false);
+        metrics.getBlockWrites().recordSince(start);
+        this.context.getPopulatedChunks(world).add(chunk.getPosition());
+    }
+
+}
@@ -24,8 +24,6 @@
  */
 package me.kenzierocks.plugins.planetesimals.worldgen;
 
-import java.util.function.BiConsumer;
-
 import org.spongepowered.api.block.BlockState;
 
 import com.flowpowered.math.vector.Vector3i;
@@ -51,22 +49,143 @@ import com.flowpowered.math.vector.Vector3i;
  */
 public class ShapeHelper {
 
+    // Layer radii, as fractions of the planet radius.
+    private static final int MANTLE_NUMERATOR = 2;
+    private static final int CORE_NUMERATOR = 1;
+    private static final int LAYER_DENOMINATOR = 3;
+
+    /**
+     * Emits a sphere one z-run per {@code (x, y)} row. Run extents come
+     * straight from the radius, so the cost scales with rows, not voxels.
+     * Filled spheres are drawn in the design's layers, the mantle from two
+     * thirds of the radius inwards and the core from one third. Hollow
+     * spheres are a one block shell of the outer layer.
+     */
     public static void makeSphere(Vector3i pos, PlanetDesign block, int r,
-            boolean filled, BiConsumer<Vector3i, BlockState> setBlock) {
+            boolean filled, BlockSpanSink sink) {
+        makeSphere(pos, block, r, filled, -r, r, sink);
+    }
+
+    /**
+     * Emits only the slab of the sphere whose x offsets from the center lie
+     * in {@code [fromX, toX]}. Slabs don't overlap, so a sphere can be
+     * drawn as several slabs in parallel.
+     */
+    public static void makeSphere(Vector3i pos, PlanetDesign block, int r,
+            boolean filled, int fromX, int toX, BlockSpanSink sink) {
+        fromX = Math.max(fromX, -r);
+        toX = Math.min(toX, r);
+        if (!filled) {
+            makeShell(pos, block.getBlock().getDefaultState(), r, fromX, toX,
+                    sink);
+        } else if (block.isLayered()) {
+            makeLayers(pos, block, r, fromX, toX, sink);
+        } else {
+            BlockState state = block.getBlock().getDefaultState();
+            int rSq = r * r;
+            for (int x = fromX; x <= toX; x++) {
+                int xSq = x * x;
+                int yExtent = floorSqrt(rSq - xSq);
+                for (int y = -yExtent; y <= yExtent; y++) {
+                    int zExtent = floorSqrt(rSq - xSq - y * y);
+                    sink.setBlocks(pos.getX() + x, pos.getY() + y,
+                            pos.getZ() - zExtent, pos.getZ() + zExtent, state);
+                }
+            }
+        }
+    }
+
+    private static void makeLayers(Vector3i pos, PlanetDesign block, int r,
+            int fromX, int toX, BlockSpanSink sink) {
+        BlockState crust = block.getBlock().getDefaultState();
+        BlockState mantle = block.getMantle().getDefaultState();
+        BlockState core = block.getCore().getDefaultState();
         int rSq = r * r;
-        for (int x = -r; x <= r; x++) {
+        int mantleR = r * MANTLE_NUMERATOR / LAYER_DENOMINATOR;
+        int mantleSq = mantleR * mantleR;
+        int coreR = r * CORE_NUMERATOR / LAYER_DENOMINATOR;
+        int coreSq = coreR * coreR;
+        for (int x = fromX; x <= toX; x++) {
             int xSq = x * x;
-            for (int y = -r; y <= r; y++) {
-                int ySq = y * y;
-                for (int z = -r; z <= r; z++) {
-                    int distSq = xSq + ySq + z * z;
-                    if (distSq <= rSq) {
-                        setBlock.accept(pos.add(x, y, z),
-                                block.getBlock().getDefaultState());
-                    }
+            int yExtent = floorSqrt(rSq - xSq);
+            for (int y = -yExtent; y <= yExtent; y++) {
+                int rowSq = xSq + y * y;
+                int crustZ = floorSqrt(rSq - rowSq);
+                int mantleZ = extent(mantleSq, rowSq);
+                int coreZ = extent(coreSq, rowSq);
+                int bx = pos.getX() + x;
+                int by = pos.getY() + y;
+                int bz = pos.getZ();
+                emitPair(sink, bx, by, bz, mantleZ + 1, crustZ, crust);
+                emitPair(sink, bx, by, bz, coreZ + 1, mantleZ, mantle);
+                if (coreZ >= 0) {
+                    sink.setBlocks(bx, by, bz - coreZ, bz + coreZ, core);
                 }
             }
         }
     }
 
+    /**
+     * Uses the same rule as WorldEdit's hollow spheres: a block is interior
+     * if the next block outwards along each axis is still inside. That
+     * reduces to a z extent per row, so only the shell is visited.
+     */
+    private static void makeShell(Vector3i pos, BlockState state, int r,
+            int fromX, int toX, BlockSpanSink sink) {
+        int rSq = r * r;
+        for (int x = fromX; x <= toX; x++) {
+            int xSq = x * x;
+            int nextXSq = (Math.abs(x) + 1) * (Math.abs(x) + 1);
+            int yExtent = floorSqrt(rSq - xSq);
+            for (int y = -yExtent; y <= yExtent; y++) {
+                int ySq = y * y;
+                int nextYSq = (Math.abs(y) + 1) * (Math.abs(y) + 1);
+                int outerZ = floorSqrt(rSq - xSq - ySq);
+                int innerZ = Math.min(outerZ - 1,
+                        Math.min(extent(rSq, nextXSq + ySq),
+                                extent(rSq, xSq + nextYSq)));
+                emitPair(sink, pos.getX() + x, pos.getY() + y, pos.getZ(),
+                        innerZ + 1, outerZ, state);
+            }
+        }
+    }
+
+    /**
+     * Emits the runs {@code [from, to]} and {@code [-to, -from]} around
+     * {@code z}, or one run through {@code z} when they meet.
+     */
+    private static void emitPair(BlockSpanSink sink, int x, int y, int z,
+            int from, int to, BlockState state) {
+        if (to < from) {
+            return;
+        }
+        if (from <= 0) {
+            sink.setBlocks(x, y, z - to, z + to, state);
+            return;
+        }
+        sink.setBlocks(x, y, z - to, z - from, state);
+        sink.setBlocks(x, y, z + from, z + to, state);
+    }
+
+    /**
+     * The z extent of a row at squared distance {@code rowSq} from the
+     * center of a sphere of squared radius {@code rSq}, or {@code -1} if the
+     * row misses the sphere.
+     */
+    private static int extent(int rSq, int rowSq) {
+        return rowSq > rSq ? -1 : floorSqrt(rSq - rowSq);
+    }
+
+    static int floorSqrt(int n) {
+        int root = (int) Math.sqrt(n);
+        // Guard against rounding in the double square root.
+        while (root * root > n) {
+            root--;
+        }
+        while ((root + 1) * (root + 1) <= n) {
+            root++;
+        }
+        return root;
+    }
+
 }
@@ -0,0 +1,284 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.util.IntTriConsumer;
+import me.kenzierocks.plugins.planetesimals.util.LongObjectHashMap;
+import me.kenzierocks.plugins.planetesimals.world.ChunkBoundary;
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+
+/**
+ * A bitmap of the chunks in one world that any planet's volume reaches
+ * into. Each region of 32x32 chunks in one chunk layer is 1024 bits, held
+ * in memory with least recently used regions written out and dropped.
+ * Regions are saved as {@code r.x.y.z.bits} files, and a region with no
+ * file is rebuilt from planet storage.
+ *
+ * <p>
+ * Storage commits planets more often than regions are saved, so after a
+ * crash a saved region can be missing planets storage has. Saved regions
+ * are only trusted if {@link #close()} left a marker saying they were all
+ * saved; otherwise they are deleted when the world is next opened and
+ * rebuilt as they are used.
+ * </p>
+ */
+public class ChunkOccupancy {
+
+    private static final String CLEAN_MARKER = "clean";
+
+    /**
+     * Deletes {@code directory} and everything in it, if it exists.
+     */
+    public static void delete(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (
+                Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(
+                    "Couldn't delete chunk occupancy", e);
+        }
+    }
+
+    private final PlanetStorage storage;
+    private final UUID world;
+    @Nullable
+    private final Path directory;
+    private final Vector3i chunkSize;
+    private final int maxRadius;
+    private final int maxRegions;
+    // Keyed by region position packed like a chunk key. Access ordered,
+    // so the eldest entry is the least recently used.
+    private final LongObjectHashMap<RegionBitmap> regions =
+            new LongObjectHashMap<>(16, true);
+    private long lastKey;
+    @Nullable
+    private RegionBitmap lastRegion;
+
+    /**
+     * @param directory - where region bitmaps are saved, or {@code null} to
+     *        keep every region in memory. Saved regions are discarded if
+     *        they weren't closed cleanly.
+     * @param maxRadius - the largest planet radius, which bounds how far
+     *        from a region a planet reaching into it can be centered
+     * @param maxRegions - how many regions to keep in memory
+     */
+    public ChunkOccupancy(PlanetStorage storage, UUID world,
+            @Nullable Path directory, Vector3i chunkSize, int maxRadius,
+            int maxRegions) {
+        this.storage = storage;
+        this.world = world;
+        this.directory = directory;
+        this.chunkSize = chunkSize;
+        this.maxRadius = maxRadius;
+        this.maxRegions = maxRegions;
+        if (directory != null) {
+            open(directory);
+        }
+    }
+
+    private static void open(Path directory) {
+        Path marker = directory.resolve(CLEAN_MARKER);
+        if (Files.exists(directory) && !Files.exists(marker)) {
+            delete(directory);
+        }
+        try {
+            // Until close() puts it back, a crash leaves no marker.
+            Files.deleteIfExists(marker);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't delete " + marker, e);
+        }
+    }
+
+    public synchronized boolean isOccupied(int chunkX, int chunkY,
+            int chunkZ) {
+        return getRegion(chunkX, chunkY, chunkZ).get(chunkX, chunkZ);
+    }
+
+    public boolean isOccupied(ChunkBoundary chunk) {
+        Vector3i pos = chunk.getChunkMin();
+        return isOccupied(pos.getX(), pos.getY(), pos.getZ());
+    }
+
+    /**
+     * Checks if any planet reaches into the chunks between {@code minChunk}
+     * and {@code maxChunk}, inclusive.
+     */
+    public synchronized boolean isAnyOccupied(Vector3i minChunk,
+            Vector3i maxChunk) {
+        for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+            for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+                for (int cz = minChunk.getZ(); cz <= maxChunk.getZ(); cz++) {
+                    if (getRegion(cx, cy, cz).get(cx, cz)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Marks every chunk {@code planet} reaches into.
+     */
+    public synchronized void add(Planet planet) {
+        Vector3i pos = planet.getPosition();
+        forEachChunkReached(pos.getX(), pos.getY(), pos.getZ(),
+                planet.getRadius(),
+                (cx, cy, cz) -> getRegion(cx, cy, cz).set(cx, cz));
+    }
+
+    // Visits the chunks a sphere's bounding box covers.
+    private void forEachChunkReached(int x, int y, int z, int r,
+            IntTriConsumer action) {
+        int minX = Math.floorDiv(x - r, this.chunkSize.getX());
+        int minY = Math.floorDiv(y - r, this.chunkSize.getY());
+        int minZ = Math.floorDiv(z - r, this.chunkSize.getZ());
+        int maxX = Math.floorDiv(x + r, this.chunkSize.getX());
+        int maxY = Math.floorDiv(y + r, this.chunkSize.getY());
+        int maxZ = Math.floorDiv(z + r, this.chunkSize.getZ());
+        for (int cy = minY; cy <= maxY; cy++) {
+            for (int cx = minX; cx <= maxX; cx++) {
+                for (int cz = minZ; cz <= maxZ; cz++) {
+                    action.accept(cx, cy, cz);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes every changed region to disk.
+     */
+    public synchronized void flush() {
+        this.regions.forEach((key, region) -> region.save());
+    }
+
+    /**
+     * Writes every changed region to disk and marks the saved regions as
+     * complete, so the next {@code ChunkOccupancy} for this world trusts
+     * them. Only call this once storage holds every added planet, and don't
+     * add planets afterwards.
+     */
+    public synchronized void close() {
+        flush();
+        if (this.directory == null) {
+            return;
+        }
+        Path marker = this.directory.resolve(CLEAN_MARKER);
+        try {
+            Files.createDirectories(this.directory);
+            Files.write(marker, new byte[0]);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write " + marker, e);
+        }
+    }
+
+    /**
+     * Forgets every region and deletes the saved ones.
+     */
+    public synchronized void clear() {
+        this.regions.clear();
+        this.lastRegion = null;
+        if (this.directory != null) {
+            delete(this.directory);
+        }
+    }
+
+    private RegionBitmap getRegion(int chunkX, int chunkY, int chunkZ) {
+        long key = RegionBitmap.key(chunkX, chunkY, chunkZ);
+        if (this.lastRegion != null && this.lastKey == key) {
+            return this.lastRegion;
+        }
+        RegionBitmap region = this.regions.get(key);
+        if (region == null) {
+            region = RegionBitmap.forChunk(this.directory, chunkX, chunkY,
+                    chunkZ);
+            if (!region.read()) {
+                rebuild(region, chunkX >> RegionBitmap.SHIFT, chunkY,
+                        chunkZ >> RegionBitmap.SHIFT);
+            }
+            this.regions.put(key, region);
+            evict();
+        }
+        this.lastKey = key;
+        this.lastRegion = region;
+        return region;
+    }
+
+    private void evict() {
+        // With nowhere to save them, dropped regions would lose planets
+        // that aren't in storage yet.
+        if (this.directory == null) {
+            return;
+        }
+        while (this.regions.size() > this.maxRegions) {
+            this.regions.remove(this.regions.eldestKey()).save();
+        }
+    }
+
+    // Marks everything in storage that reaches into the region. Planets
+    // still waiting to be stored were marked when they were added.
+    private void rebuild(RegionBitmap region, int regionX, int chunkY,
+            int regionZ) {
+        int padX = this.maxRadius / this.chunkSize.getX() + 1;
+        int padY = this.maxRadius / this.chunkSize.getY() + 1;
+        int padZ = this.maxRadius / this.chunkSize.getZ() + 1;
+        int minX = regionX << RegionBitmap.SHIFT;
+        int minZ = regionZ << RegionBitmap.SHIFT;
+        IntTriConsumer markInRegion = (cx, cy, cz) -> {
+            if (cx >> RegionBitmap.SHIFT == regionX && cy == chunkY
+                    && cz >> RegionBitmap.SHIFT == regionZ) {
+                region.set(cx, cz);
+            }
+        };
+        this.storage.selectPlanets(this.world,
+                new Vector3i(minX - padX, chunkY - padY, minZ - padZ),
+                new Vector3i(minX + RegionBitmap.MASK + padX,
+                        chunkY + padY, minZ + RegionBitmap.MASK + padZ),
+                (cx, cy, cz, x, y, z, radius) -> forEachChunkReached(x, y, z,
+                        radius, markInRegion));
+        // Save it even if it's empty, so the query isn't repeated.
+        region.markDirty();
+    }
+
+}
@@ -24,64 +24,106 @@
  */
 package me.kenzierocks.plugins.planetesimals.worldgen.data;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.EOFException;
+import static com.google.common.base.Preconditions.checkArgument;
+
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Collection;
 
 import com.flowpowered.math.vector.Vector3i;
 import com.google.auto.value.AutoValue;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.io.ByteArrayDataInput;
-import com.google.common.io.ByteArrayDataOutput;
 import com.google.common.io.ByteStreams;
 
 import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
 
+/**
+ * The planets centered in one chunk.
+ *
+ * <p>Version 2 of the binary format is the int {@link #V2_MAGIC}, the planet
+ * count as an int, then one fixed-width record per planet: x and z as ints,
+ * y and radius as shorts. The original format, a sequence of
+ * {@code (id, length, data)} records with no header, is still readable.
+ */
 @AutoValue
 public abstract class ChunkPlanetData {
 
     private static final int PLANET_ID = 0;
+    private static final int LEGACY_PLANET_SIZE = 16;
+    // "PLN" then the version. Legacy data starts with PLANET_ID instead.
+    private static final int V2_MAGIC = 0x504C4E02;
+    private static final int V2_HEADER_SIZE = 8;
+    private static final int V2_PLANET_SIZE = 12;
 
     public static ChunkPlanetData readFromFile(InputStream in)
             throws IOException {
-        ImmutableSet.Builder<Planet> planets = ImmutableSet.builder();
         try (
-                DataInputStream stream = new DataInputStream(in)) {
-            while (true) {
-                int id = stream.readInt();
-                int length = stream.readInt();
-                byte[] data = new byte[length];
-                stream.readFully(data);
-                if (id == PLANET_ID) {
-                    planets.add(readPlanet(ByteStreams.newDataInput(data)));
-                } else {
-                    throw new UnsupportedOperationException(
-                            "Don't know how to process " + id);
-                }
-            }
-        } catch (EOFException eof) {
-            // Expected, marks end of data.
+                InputStream stream = in) {
+            return read(ByteBuffer.wrap(ByteStreams.toByteArray(stream)));
         }
-        return fromPlanets(planets.build());
     }
 
-    private static Planet readPlanet(ByteArrayDataInput stream) {
-        int x = stream.readInt();
-        int y = stream.readInt();
-        int z = stream.readInt();
-        int radius = stream.readInt();
-        return Planet.create(new Vector3i(x, y, z), radius);
+    /**
+     * Reads chunk data in either format from the remaining bytes of
+     * {@code buffer}, which is left positioned after the data.
+     *
+     * @throws IllegalArgumentException if the data ends partway through a
+     *         record
+     */
+    public static ChunkPlanetData read(ByteBuffer buffer) {
+        if (buffer.remaining() >= V2_HEADER_SIZE
+                && buffer.getInt(buffer.position()) == V2_MAGIC) {
+            return readV2(buffer);
+        }
+        return readLegacy(buffer);
+    }
+
+    private static ChunkPlanetData readV2(ByteBuffer buffer) {
+        buffer.getInt();
+        int count = buffer.getInt();
+        checkArgument(count >= 0
+                && buffer.remaining() >= (long) count * V2_PLANET_SIZE,
+                "truncated chunk data, %s planets in %s bytes", count,
+                buffer.remaining());
+        ImmutableSet.Builder<Planet> planets = ImmutableSet.builder();
+        for (int i = 0; i < count; i++) {
+            int x = buffer.getInt();
+            int z = buffer.getInt();
+            int y = buffer.getShort();
+            int radius = buffer.getShort();
+            planets.add(Planet.create(new Vector3i(x, y, z), radius));
+        }
+        return fromPlanets(planets.build());
     }
 
-    private static void writePlanet(Planet planet, ByteArrayDataOutput stream) {
-        stream.writeInt(planet.getPosition().getX());
-        stream.writeInt(planet.getPosition().getY());
-        stream.writeInt(planet.getPosition().getZ());
-        stream.writeInt(planet.getRadius());
+    private static ChunkPlanetData readLegacy(ByteBuffer buffer) {
+        ImmutableSet.Builder<Planet> planets = ImmutableSet.builder();
+        while (buffer.hasRemaining()) {
+            checkArgument(buffer.remaining() >= 8,
+                    "truncated chunk data, %s bytes left of a record header",
+                    buffer.remaining());
+            int id = buffer.getInt();
+            int length = buffer.getInt();
+            checkArgument(length >= 0 && buffer.remaining() >= length,
+                    "truncated chunk data, %s bytes left of a %s byte record",
+                    buffer.remaining(), length);
+            if (id != PLANET_ID) {
+                throw new UnsupportedOperationException(
+                        "Don't know how to process " + id);
+            }
+            int end = buffer.position() + length;
+            checkArgument(length >= LEGACY_PLANET_SIZE,
+                    "planet record too short: %s", length);
+            int x = buffer.getInt();
+            int y = buffer.getInt();
+            int z = buffer.getInt();
+            int radius = buffer.getInt();
+            planets.add(Planet.create(new Vector3i(x, y, z), radius));
+            buffer.position(end);
+        }
+        return fromPlanets(planets.build());
     }
 
     public static ChunkPlanetData
@@ -94,17 +136,38 @@ public abstract class ChunkPlanetData {
 
     public abstract ImmutableSet<Planet> getPlanets();
 
+    /**
+     * The number of bytes {@link #write(ByteBuffer)} needs.
+     */
+    public int getEncodedSize() {
+        return V2_HEADER_SIZE + getPlanets().size() * V2_PLANET_SIZE;
+    }
+
+    /**
+     * Writes this data in the version 2 format at the position of
+     * {@code buffer}, which needs {@link #getEncodedSize()} bytes remaining.
+     */
+    public void write(ByteBuffer buffer) {
+        buffer.putInt(V2_MAGIC);
+        buffer.putInt(getPlanets().size());
+        for (Planet planet : getPlanets()) {
+            Vector3i pos = planet.getPosition();
+            checkArgument(pos.getY() == (short) pos.getY()
+                    && planet.getRadius() == (short) planet.getRadius(),
+                    "%s doesn't fit in a planet record", planet);
+            buffer.putInt(pos.getX());
+            buffer.putInt(pos.getZ());
+            buffer.putShort((short) pos.getY());
+            buffer.putShort((short) planet.getRadius());
+        }
+    }
+
     public void writeToFile(OutputStream out) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(getEncodedSize());
+        write(buffer);
         try (
-                DataOutputStream stream = new DataOutputStream(out)) {
-            for (Planet planet : getPlanets()) {
-                ByteArrayDataOutput planetData = ByteStreams.newDataOutput();
-                writePlanet(planet, planetData);
-                byte[] data = planetData.toByteArray();
-                stream.writeInt(PLANET_ID);
-                stream.writeInt(data.length);
-                stream.write(data);
-            }
+                OutputStream stream = out) {
+            stream.write(buffer.array());
         }
     }
 
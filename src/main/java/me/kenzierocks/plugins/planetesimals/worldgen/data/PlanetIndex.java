@@ -0,0 +1,280 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableList;
+
+import me.kenzierocks.plugins.planetesimals.util.LongObjectHashMap;
+import me.kenzierocks.plugins.planetesimals.world.ChunkKey;
+import me.kenzierocks.plugins.planetesimals.worldgen.GenerationMetrics;
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+
+/**
+ * In-memory index of the planets placed in one world, keyed by the chunk
+ * containing each planet's center. Chunks are loaded from storage the first
+ * time they are asked about, and placements are written through, so
+ * repeated collision checks don't go back to storage. The index holds a
+ * bounded number of chunks, dropping the least recently used.
+ *
+ * <p>
+ * The {@link ChunkOccupancy} bitmap sits in front of the map. A chunk no
+ * planet reaches into holds no planet's center either, so it is known to be
+ * empty without a query, and doesn't take up room in the index. The bitmap
+ * is itself bounded, keeping only recently used regions in memory.
+ * </p>
+ */
+public class PlanetIndex {
+
+    // x, y, z, radius
+    private static final int RECORD_SIZE = 4;
+    private static final int[] NO_PLANETS = new int[0];
+    // Enough for every chunk one lookup can cover to stay in memory
+    // until it's read.
+    private static final int MIN_CACHED_CHUNKS = 1024;
+
+    private final PlanetStorage storage;
+    private final PlanetWriter writer;
+    private final UUID world;
+    private final ChunkOccupancy occupancy;
+    private final GenerationMetrics metrics;
+    private final int maxChunks;
+    // Access ordered, so the eldest entry is the least recently used.
+    private final LongObjectHashMap<int[]> planets =
+            new LongObjectHashMap<>(MIN_CACHED_CHUNKS, true);
+    // Set when a chunk with planets is dropped, as they may not be stored
+    // yet.
+    private boolean flushBeforeLoad;
+
+    /**
+     * @param writer - stores added planets, and is flushed before loading
+     *        from storage if a chunk with planets was dropped since the last
+     *        flush
+     * @param occupancy - marked with every added planet, and used to skip
+     *        chunks that can't hold any
+     * @param maxChunks - how many chunks to keep in memory
+     * @param metrics - records storage queries and cache hits and misses
+     */
+    public PlanetIndex(PlanetStorage storage, PlanetWriter writer, UUID world,
+            ChunkOccupancy occupancy, int maxChunks,
+            GenerationMetrics metrics) {
+        this.storage = storage;
+        this.writer = writer;
+        this.world = world;
+        this.occupancy = occupancy;
+        this.metrics = metrics;
+        this.maxChunks = Math.max(maxChunks, MIN_CACHED_CHUNKS);
+    }
+
+    /**
+     * Gets the chunks that planets in this world reach into.
+     */
+    public ChunkOccupancy getOccupancy() {
+        return this.occupancy;
+    }
+
+    /**
+     * Checks if a sphere of the given radius at the given position would
+     * touch any planet centered in the chunks between {@code minChunk} and
+     * {@code maxChunk}, inclusive. Any of those chunks that aren't in memory
+     * are fetched together in a single range query.
+     */
+    public synchronized boolean intersectsAny(Vector3i minChunk,
+            Vector3i maxChunk, int x, int y, int z, int radius) {
+        loadRange(minChunk, maxChunk);
+        for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+            for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+                for (int cz = minChunk.getZ(); cz <= maxChunk.getZ(); cz++) {
+                    if (intersects(getLoaded(ChunkKey.pack(cx, cy, cz)), x,
+                            y, z, radius)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean intersects(int[] records, int x, int y, int z,
+            int radius) {
+        for (int i = 0; i < records.length; i += RECORD_SIZE) {
+            int dx = records[i] - x;
+            int dy = records[i + 1] - y;
+            int dz = records[i + 2] - z;
+            int reach = radius + records[i + 3];
+            if (dx * dx + dy * dy + dz * dz <= reach * reach) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets every planet centered in the chunks between {@code minChunk} and
+     * {@code maxChunk}, inclusive.
+     */
+    public synchronized List<Planet> getPlanets(Vector3i minChunk,
+            Vector3i maxChunk) {
+        loadRange(minChunk, maxChunk);
+        ImmutableList.Builder<Planet> list = ImmutableList.builder();
+        for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+            for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+                for (int cz = minChunk.getZ(); cz <= maxChunk.getZ(); cz++) {
+                    int[] records = getLoaded(ChunkKey.pack(cx, cy, cz));
+                    for (int i = 0; i < records.length; i += RECORD_SIZE) {
+                        list.add(Planet.create(new Vector3i(records[i],
+                                records[i + 1], records[i + 2]),
+                                records[i + 3]));
+                    }
+                }
+            }
+        }
+        return list.build();
+    }
+
+    /**
+     * Adds a placed planet and queues it with the writer. Both happen under
+     * the index's lock, so a chunk reloaded from storage after it was
+     * dropped can't miss a planet that is in neither the index nor the
+     * writer's queue. The chunk's records are replaced rather than changed,
+     * so arrays handed out earlier stay valid.
+     */
+    public synchronized void add(Vector3i chunk, Planet planet) {
+        long key = ChunkKey.pack(chunk);
+        int[] records;
+        if (this.occupancy.isOccupied(chunk.getX(), chunk.getY(),
+                chunk.getZ())) {
+            loadRange(chunk, chunk);
+            records = getLoaded(key);
+        } else {
+            // The chunk's first planet.
+            records = NO_PLANETS;
+        }
+        int[] added = Arrays.copyOf(records, records.length + RECORD_SIZE);
+        Vector3i pos = planet.getPosition();
+        added[records.length] = pos.getX();
+        added[records.length + 1] = pos.getY();
+        added[records.length + 2] = pos.getZ();
+        added[records.length + 3] = planet.getRadius();
+        cache(key, added);
+        this.occupancy.add(planet);
+        this.writer.submit(this.world, chunk, planet);
+    }
+
+    public synchronized void clear() {
+        this.planets.clear();
+        this.flushBeforeLoad = false;
+        this.occupancy.clear();
+    }
+
+    private void cache(long key, int[] records) {
+        this.planets.put(key, records);
+        while (this.planets.size() > this.maxChunks) {
+            int[] dropped = this.planets.remove(this.planets.eldestKey());
+            if (dropped.length > 0) {
+                this.flushBeforeLoad = true;
+            }
+        }
+    }
+
+    // Only valid right after loadRange covered the chunk. Chunks with no
+    // planets were never loaded.
+    private int[] getLoaded(long key) {
+        int[] records = this.planets.get(key);
+        return records == null ? NO_PLANETS : records;
+    }
+
+    private void loadRange(Vector3i minChunk, Vector3i maxChunk) {
+        ChunkOccupancy occupancy = this.occupancy;
+        boolean missing = false;
+        for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+            for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+                for (int cz = minChunk.getZ(); cz <= maxChunk.getZ(); cz++) {
+                    if (!occupancy.isOccupied(cx, cy, cz)) {
+                        // Holds no planets, no need to ask storage.
+                        continue;
+                    }
+                    long key = ChunkKey.pack(cx, cy, cz);
+                    // Reading it also marks it recently used.
+                    if (this.planets.get(key) != null) {
+                        this.metrics.getIndexHits().increment();
+                    } else {
+                        this.metrics.getIndexMisses().increment();
+                        missing = true;
+                    }
+                }
+            }
+        }
+        if (!missing) {
+            return;
+        }
+        if (this.flushBeforeLoad) {
+            // Make sure dropped planets are in storage before reading it.
+            this.flushBeforeLoad = false;
+            this.writer.flush();
+        }
+        LongObjectHashMap<int[]> loaded = new LongObjectHashMap<>();
+        PlanetStorage.PlanetRowHandler collect =
+                (chunkX, chunkY, chunkZ, x, y, z, radius) -> {
+                    long key = ChunkKey.pack(chunkX, chunkY, chunkZ);
+                    int[] records = loaded.get(key);
+                    if (records == null) {
+                        records = NO_PLANETS;
+                    }
+                    int[] added = Arrays.copyOf(records,
+                            records.length + RECORD_SIZE);
+                    added[records.length] = x;
+                    added[records.length + 1] = y;
+                    added[records.length + 2] = z;
+                    added[records.length + 3] = radius;
+                    loaded.put(key, added);
+                };
+        long start = System.nanoTime();
+        this.storage.selectPlanets(this.world, minChunk, maxChunk, collect);
+        this.metrics.getStorageQuery().recordSince(start);
+        // Planets storage refused are still waiting in the writer.
+        this.writer.selectUnstored(this.world, minChunk, maxChunk, collect);
+        for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+            for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+                for (int cz = minChunk.getZ(); cz <= maxChunk.getZ(); cz++) {
+                    if (!occupancy.isOccupied(cx, cy, cz)) {
+                        continue;
+                    }
+                    long key = ChunkKey.pack(cx, cy, cz);
+                    // Chunks already in memory may have unsaved placements.
+                    if (!this.planets.containsKey(key)) {
+                        int[] records = loaded.get(key);
+                        cache(key, records == null ? NO_PLANETS : records);
+                    }
+                }
+            }
+        }
+    }
+
+}
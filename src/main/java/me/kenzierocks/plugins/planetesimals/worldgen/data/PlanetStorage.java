@@ -0,0 +1,61 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import java.util.Collection;
+import java.util.UUID;
+
+import com.flowpowered.math.vector.Vector3i;
+
+
+/**
+ * Where placed planets are kept between server runs.
+ */
+public interface PlanetStorage {
+
+    interface PlanetRowHandler {
+
+        void handle(int chunkX, int chunkY, int chunkZ, int x, int y, int z,
+                int radius);
+
+    }
+
+    /**
+     * Passes every planet in {@code world} centered in the chunks between
+     * {@code minChunk} and {@code maxChunk}, inclusive, to {@code handler}.
+     */
+    void selectPlanets(UUID world, Vector3i minChunk, Vector3i maxChunk,
+            PlanetRowHandler handler);
+
+    void insertPlanets(Collection<StoredPlanet> planets);
+
+    /**
+     * Removes every stored planet in every world.
+     */
+    void clear();
+
+    void close();
+
+}
@@ -0,0 +1,303 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import static com.google.common.base.Preconditions.checkState;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+
+/**
+ * Persists placed planets off the world generation thread. Placements are
+ * queued in a bounded buffer and written in batches, one transaction per
+ * batch, whenever a batch fills up or the flush interval passes.
+ *
+ * <p>
+ * Batches that fail to store are kept and retried on later flushes, backing
+ * off up to {@link #MAX_RETRY_DELAY_MILLIS} between attempts. While storage
+ * is failing, newly queued planets wait behind them, up to
+ * {@link #MAX_FAILED} planets. {@link #selectUnstored} reports the planets
+ * still waiting, for readers that must see every placement.
+ * </p>
+ *
+ * <p>
+ * Submitting never blocks placement. If storage falls so far behind that
+ * the queue is full, new planets are dropped, and the number dropped is
+ * logged on the next flush.
+ * </p>
+ */
+public class PlanetWriter {
+
+    private static final int QUEUE_CAPACITY = 16384;
+    private static final int MAX_FAILED = 65536;
+    private static final int BATCH_SIZE = 256;
+    private static final long FLUSH_INTERVAL_MILLIS =
+            TimeUnit.SECONDS.toMillis(2);
+    private static final long MIN_RETRY_DELAY_MILLIS =
+            TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_RETRY_DELAY_MILLIS =
+            TimeUnit.MINUTES.toMillis(1);
+
+    private final PlanetStorage storage;
+    private final Logger logger;
+    private final BlockingQueue<StoredPlanet> queue =
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Object signal = new Object();
+    private final Object writeLock = new Object();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    // Planets that failed to store, oldest first. Guarded by writeLock.
+    private final List<StoredPlanet> failed = new ArrayList<>();
+    private long retryDelayMillis;
+    private long retryAt;
+    private volatile boolean running;
+    private volatile boolean flushRequested;
+    private Thread thread;
+
+    public PlanetWriter(PlanetStorage storage, Logger logger) {
+        this.storage = storage;
+        this.logger = logger;
+    }
+
+    public synchronized void start() {
+        checkState(this.thread == null, "already started");
+        this.running = true;
+        this.thread = new Thread(this::run, "Planetesimals Planet Writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Stops the background writer and writes everything still queued,
+     * retrying failed batches once more. The writer is left to finish its
+     * current batch rather than interrupted, since interrupting channel I/O
+     * closes the channel.
+     */
+    public synchronized void stop() {
+        if (this.thread != null) {
+            synchronized (this.signal) {
+                this.running = false;
+                this.signal.notifyAll();
+            }
+            try {
+                this.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            this.thread = null;
+        }
+        flush(true);
+        synchronized (this.writeLock) {
+            if (!this.failed.isEmpty()) {
+                this.logger.error("Giving up on storing "
+                        + this.failed.size() + " planets");
+                this.failed.clear();
+            }
+        }
+    }
+
+    /**
+     * Queues a planet for storage, or drops it if the queue is full.
+     */
+    public void submit(UUID world, Vector3i chunk, Planet planet) {
+        if (!this.queue.offer(StoredPlanet.create(world, chunk, planet))) {
+            this.dropped.incrementAndGet();
+            return;
+        }
+        this.submitted.incrementAndGet();
+        if (this.queue.size() >= BATCH_SIZE) {
+            synchronized (this.signal) {
+                this.signal.notify();
+            }
+        }
+    }
+
+    /**
+     * The number of planets submitted since the server started.
+     */
+    public long getSubmittedCount() {
+        return this.submitted.get();
+    }
+
+    /**
+     * Writes everything currently queued, on the calling thread. If earlier
+     * batches are waiting to be retried and their delay hasn't passed yet,
+     * the queue is moved behind them instead.
+     */
+    public void flush() {
+        flush(false);
+    }
+
+    /**
+     * Asks the background writer to write everything currently queued,
+     * without waiting for it to.
+     */
+    public void requestFlush() {
+        synchronized (this.signal) {
+            this.flushRequested = true;
+            this.signal.notify();
+        }
+    }
+
+    /**
+     * Drops every queued planet and every planet waiting to be retried.
+     */
+    public void clear() {
+        synchronized (this.writeLock) {
+            this.queue.clear();
+            this.failed.clear();
+            this.retryDelayMillis = 0;
+        }
+    }
+
+    /**
+     * Passes every planet in {@code world} centered in the chunks between
+     * {@code minChunk} and {@code maxChunk}, inclusive, that failed to store
+     * and is waiting to be retried, to {@code handler}. Planets still in the
+     * queue aren't included; {@link #flush()} first to move them to storage
+     * or here.
+     */
+    public void selectUnstored(UUID world, Vector3i minChunk,
+            Vector3i maxChunk, PlanetStorage.PlanetRowHandler handler) {
+        synchronized (this.writeLock) {
+            for (StoredPlanet stored : this.failed) {
+                Vector3i chunk = stored.getChunk();
+                if (!stored.getWorld().equals(world)
+                        || chunk.getX() < minChunk.getX()
+                        || chunk.getY() < minChunk.getY()
+                        || chunk.getZ() < minChunk.getZ()
+                        || chunk.getX() > maxChunk.getX()
+                        || chunk.getY() > maxChunk.getY()
+                        || chunk.getZ() > maxChunk.getZ()) {
+                    continue;
+                }
+                Planet planet = stored.getPlanet();
+                Vector3i pos = planet.getPosition();
+                handler.handle(chunk.getX(), chunk.getY(), chunk.getZ(),
+                        pos.getX(), pos.getY(), pos.getZ(),
+                        planet.getRadius());
+            }
+        }
+    }
+
+    private void flush(boolean retryNow) {
+        long dropped = this.dropped.getAndSet(0);
+        if (dropped > 0) {
+            this.logger.error("Dropped " + dropped + " planets, as storage"
+                    + " is too far behind to queue them");
+        }
+        synchronized (this.writeLock) {
+            if (!this.failed.isEmpty()) {
+                if (!retryNow && System.nanoTime() - this.retryAt < 0) {
+                    drainToFailed();
+                    return;
+                }
+                int count = this.failed.size();
+                if (!writeAll(this.failed)) {
+                    drainToFailed();
+                    return;
+                }
+                this.logger.info("Stored " + count + " planets on retry");
+                this.retryDelayMillis = 0;
+            }
+            List<StoredPlanet> batch = new ArrayList<>(BATCH_SIZE);
+            while (this.queue.drainTo(batch, BATCH_SIZE) > 0) {
+                if (!writeAll(batch)) {
+                    this.failed.addAll(batch);
+                    drainToFailed();
+                    return;
+                }
+            }
+        }
+    }
+
+    // Anything past the cap stays queued, and submit drops planets once the
+    // queue is full too.
+    private void drainToFailed() {
+        this.queue.drainTo(this.failed,
+                Math.max(0, MAX_FAILED - this.failed.size()));
+    }
+
+    private void run() {
+        while (this.running) {
+            try {
+                synchronized (this.signal) {
+                    if (this.running && !this.flushRequested
+                            && this.queue.size() < BATCH_SIZE) {
+                        this.signal.wait(FLUSH_INTERVAL_MILLIS);
+                    }
+                    this.flushRequested = false;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                flush();
+            } catch (Throwable t) {
+                // Keep the thread alive, or the queue fills up for good.
+                this.logger.error("Planet writer failed, carrying on", t);
+            }
+        }
+    }
+
+    /**
+     * Writes {@code planets} in batches, removing each batch once it is
+     * stored. On failure the rest stay in the list and the next retry is
+     * scheduled.
+     */
+    private boolean writeAll(List<StoredPlanet> planets) {
+        while (!planets.isEmpty()) {
+            List<StoredPlanet> batch =
+                    planets.subList(0, Math.min(planets.size(), BATCH_SIZE));
+            try {
+                this.storage.insertPlanets(batch);
+            } catch (RuntimeException e) {
+                this.retryDelayMillis = Math.min(MAX_RETRY_DELAY_MILLIS,
+                        Math.max(MIN_RETRY_DELAY_MILLIS,
+                                this.retryDelayMillis * 2));
+                this.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS
+                        .toNanos(this.retryDelayMillis);
+                this.logger.error("Couldn't store " + planets.size()
+                        + " planets, retrying in " + this.retryDelayMillis
+                        + " ms", e);
+                return false;
+            }
+            batch.clear();
+        }
+        return true;
+    }
+
+}
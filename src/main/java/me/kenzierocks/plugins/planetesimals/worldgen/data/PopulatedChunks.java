@@ -0,0 +1,109 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import java.nio.file.Path;
+
+import javax.annotation.Nullable;
+
+import com.flowpowered.math.vector.Vector3i;
+
+import me.kenzierocks.plugins.planetesimals.util.LongObjectHashMap;
+
+/**
+ * A bitmap of the chunks in one world that have been populated, saved in
+ * regions like {@link ChunkOccupancy}. A chunk is saved as soon as it's
+ * marked, since the server can save the chunk itself any time after it's
+ * populated, and a populated chunk missing here would be planned and
+ * drawn into again.
+ */
+public class PopulatedChunks {
+
+    @Nullable
+    private final Path directory;
+    private final int maxRegions;
+    // Access ordered, so the eldest entry is the least recently used.
+    private final LongObjectHashMap<RegionBitmap> regions =
+            new LongObjectHashMap<>(16, true);
+
+    /**
+     * @param directory - where region bitmaps are saved, or {@code null} to
+     *        keep every region in memory
+     * @param maxRegions - how many regions to keep in memory
+     */
+    public PopulatedChunks(@Nullable Path directory, int maxRegions) {
+        this.directory = directory;
+        this.maxRegions = maxRegions;
+    }
+
+    public synchronized boolean isPopulated(Vector3i chunk) {
+        return getRegion(chunk.getX(), chunk.getY(), chunk.getZ())
+                .get(chunk.getX(), chunk.getZ());
+    }
+
+    /**
+     * Checks if any of the chunks between {@code minChunk} and
+     * {@code maxChunk}, inclusive, has been populated.
+     */
+    public synchronized boolean isAnyPopulated(Vector3i minChunk,
+            Vector3i maxChunk) {
+        for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+            for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+                for (int cz = minChunk.getZ(); cz <= maxChunk.getZ(); cz++) {
+                    if (getRegion(cx, cy, cz).get(cx, cz)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    public synchronized void add(Vector3i chunk) {
+        RegionBitmap region =
+                getRegion(chunk.getX(), chunk.getY(), chunk.getZ());
+        if (region.set(chunk.getX(), chunk.getZ())) {
+            region.save();
+        }
+    }
+
+    private RegionBitmap getRegion(int chunkX, int chunkY, int chunkZ) {
+        long key = RegionBitmap.key(chunkX, chunkY, chunkZ);
+        RegionBitmap region = this.regions.get(key);
+        if (region == null) {
+            region = RegionBitmap.forChunk(this.directory, chunkX, chunkY,
+                    chunkZ);
+            region.read();
+            this.regions.put(key, region);
+            // Regions are always saved, so they can be dropped as they are.
+            if (this.directory != null
+                    && this.regions.size() > this.maxRegions) {
+                this.regions.remove(this.regions.eldestKey());
+            }
+        }
+        return region;
+    }
+
+}
@@ -0,0 +1,161 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import javax.annotation.Nullable;
+
+import me.kenzierocks.plugins.planetesimals.world.ChunkKey;
+
+/**
+ * One bit for each chunk in a region of 32x32 chunks in one chunk layer,
+ * optionally saved as a {@code r.x.y.z.bits} file.
+ */
+final class RegionBitmap {
+
+    // Planet region files are the same size, see RegionPlanetStorage.
+    static final int SHIFT = 5;
+    static final int MASK = (1 << SHIFT) - 1;
+    private static final int WORDS = (1 << (SHIFT * 2)) / Long.SIZE;
+    private static final int BYTES = WORDS * Long.BYTES;
+
+    /**
+     * Packs the position of the region holding a chunk like a chunk key.
+     */
+    static long key(int chunkX, int chunkY, int chunkZ) {
+        return ChunkKey.pack(chunkX >> SHIFT, chunkY, chunkZ >> SHIFT);
+    }
+
+    /**
+     * Creates the region holding a chunk, saved in {@code directory} or
+     * kept in memory if it's {@code null}.
+     */
+    static RegionBitmap forChunk(@Nullable Path directory, int chunkX,
+            int chunkY, int chunkZ) {
+        return new RegionBitmap(directory == null ? null
+                : directory.resolve("r." + (chunkX >> SHIFT) + "." + chunkY
+                        + "." + (chunkZ >> SHIFT) + ".bits"));
+    }
+
+    private static int index(int chunkX, int chunkZ) {
+        return (chunkX & MASK) | (chunkZ & MASK) << SHIFT;
+    }
+
+    private final long[] bits = new long[WORDS];
+    @Nullable
+    private final Path file;
+    private boolean dirty;
+
+    private RegionBitmap(@Nullable Path file) {
+        this.file = file;
+    }
+
+    boolean get(int chunkX, int chunkZ) {
+        int index = index(chunkX, chunkZ);
+        return (this.bits[index >>> 6] & 1L << index) != 0;
+    }
+
+    /**
+     * @return {@code true} if the bit wasn't set already
+     */
+    boolean set(int chunkX, int chunkZ) {
+        int index = index(chunkX, chunkZ);
+        long word = this.bits[index >>> 6];
+        long set = word | 1L << index;
+        if (set == word) {
+            return false;
+        }
+        this.bits[index >>> 6] = set;
+        this.dirty = true;
+        return true;
+    }
+
+    /**
+     * Makes the next {@link #save()} write the file even if no bit changed.
+     */
+    void markDirty() {
+        this.dirty = true;
+    }
+
+    /**
+     * Loads the saved bits.
+     *
+     * @return {@code false} if there is no file, or it's damaged
+     */
+    boolean read() {
+        if (this.file == null || !Files.exists(this.file)) {
+            return false;
+        }
+        try {
+            byte[] bytes = Files.readAllBytes(this.file);
+            if (bytes.length != BYTES) {
+                return false;
+            }
+            ByteBuffer.wrap(bytes).asLongBuffer().get(this.bits);
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read " + this.file, e);
+        }
+    }
+
+    /**
+     * Writes the bits to the file if they changed since the last read or
+     * save.
+     */
+    void save() {
+        if (this.file == null || !this.dirty) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(BYTES);
+        buffer.asLongBuffer().put(this.bits);
+        // Written aside and moved over, so a crash leaves either the old or
+        // the new bitmap rather than part of one.
+        Path temp =
+                this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(this.file.getParent());
+            Files.write(temp, buffer.array());
+            try {
+                Files.move(temp, this.file,
+                        StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, this.file,
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write " + this.file, e);
+        }
+        this.dirty = false;
+    }
+
+}
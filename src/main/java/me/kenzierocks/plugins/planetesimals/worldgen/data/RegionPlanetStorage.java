@@ -0,0 +1,344 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.Nullable;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+
+/**
+ * Stores planets in region files, Anvil style. Each file covers 32x32
+ * chunks of one chunk layer and starts with an offset table of
+ * {@code (offset, length)} int pairs, one per chunk, followed by
+ * {@link ChunkPlanetData} blobs. Files are read through a memory mapping.
+ *
+ * <p>
+ * Each blob sits in a slot sized to the next power of two, kept in the top
+ * byte of its length entry. A rewritten chunk goes back into its slot if it
+ * fits, and only moves to a new, twice as large slot at the end of the file
+ * when it doesn't. Slots left behind are never reused, but a chunk's old
+ * slots add up to less than its current one, so a file stays under four
+ * times the size of the data it holds. Files written before slots were
+ * sized have a zero top byte, meaning the slot is exactly the blob's
+ * length.
+ * </p>
+ */
+public class RegionPlanetStorage implements PlanetStorage {
+
+    private static final int CHUNKS_PER_REGION = 1 << (RegionBitmap.SHIFT * 2);
+    private static final int HEADER_ENTRY_SIZE = 8;
+    private static final int HEADER_SIZE =
+            CHUNKS_PER_REGION * HEADER_ENTRY_SIZE;
+    private static final int MAX_OPEN_REGIONS = 64;
+    private static final int LENGTH_BITS = 24;
+    private static final int LENGTH_MASK = (1 << LENGTH_BITS) - 1;
+    private static final int MIN_SLOT_SHIFT = 6;
+
+    private static int slotSize(int lengthEntry) {
+        int shift = lengthEntry >>> LENGTH_BITS;
+        return shift == 0 ? lengthEntry & LENGTH_MASK : 1 << shift;
+    }
+
+    private static final class Region {
+
+        private final FileChannel channel;
+        private long size;
+        private MappedByteBuffer mapped;
+
+        private Region(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        private ByteBuffer view() throws IOException {
+            // Writes through the channel show up in the mapping, so it only
+            // needs replacing once the file has grown past it.
+            if (this.mapped == null || this.mapped.capacity() < this.size) {
+                this.mapped = this.channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, this.size);
+            }
+            return this.mapped;
+        }
+
+        @Nullable
+        private ChunkPlanetData read(int index) throws IOException {
+            ByteBuffer view = view();
+            if (view.capacity() < HEADER_SIZE) {
+                return null;
+            }
+            int offset = view.getInt(index * HEADER_ENTRY_SIZE);
+            int length =
+                    view.getInt(index * HEADER_ENTRY_SIZE + 4) & LENGTH_MASK;
+            if (offset == 0) {
+                return null;
+            }
+            ByteBuffer blob = view.duplicate();
+            blob.limit(offset + length).position(offset);
+            return ChunkPlanetData.read(blob);
+        }
+
+        /**
+         * Writes a chunk's blob into its slot, or into a new slot at the end
+         * of the file if it has outgrown it.
+         */
+        private void write(int index, ByteBuffer data) throws IOException {
+            int length = data.remaining();
+            if (length > LENGTH_MASK) {
+                throw new IOException("Chunk data of " + length
+                        + " bytes is too large for a region file");
+            }
+            int offset = 0;
+            int lengthEntry = 0;
+            if (this.size >= HEADER_SIZE) {
+                ByteBuffer view = view();
+                offset = view.getInt(index * HEADER_ENTRY_SIZE);
+                lengthEntry = view.getInt(index * HEADER_ENTRY_SIZE + 4);
+            }
+            int slotShift;
+            if (offset != 0 && length <= slotSize(lengthEntry)) {
+                slotShift = lengthEntry >>> LENGTH_BITS;
+                this.channel.write(data, offset);
+            } else {
+                slotShift = Math.max(MIN_SLOT_SHIFT,
+                        32 - Integer.numberOfLeadingZeros(length - 1));
+                long end = Math.max(this.size, HEADER_SIZE);
+                long slotEnd = end + (1L << slotShift);
+                if (slotEnd > Integer.MAX_VALUE) {
+                    throw new IOException("Region file is full");
+                }
+                this.channel.write(data, end);
+                // Claim the whole slot, so the next one starts after it.
+                this.channel.write(ByteBuffer.allocate(1), slotEnd - 1);
+                this.size = slotEnd;
+                offset = (int) end;
+            }
+            ByteBuffer entry = ByteBuffer.allocate(HEADER_ENTRY_SIZE);
+            entry.putInt(offset).putInt(slotShift << LENGTH_BITS | length)
+                    .flip();
+            this.channel.write(entry, index * HEADER_ENTRY_SIZE);
+        }
+
+    }
+
+    private static int chunkIndex(int chunkX, int chunkZ) {
+        return (chunkX & RegionBitmap.MASK)
+                | (chunkZ & RegionBitmap.MASK) << RegionBitmap.SHIFT;
+    }
+
+    private final Path directory;
+    // Reused for encoding chunks, grown when one doesn't fit.
+    private ByteBuffer encodeBuffer = ByteBuffer.allocate(4096);
+    // Access ordered, so the first entry is the least recently used.
+    private final Map<Path, Region> regions =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    public RegionPlanetStorage(Path directory) {
+        this.directory = directory;
+    }
+
+    private Path regionFile(UUID world, int chunkX, int chunkY, int chunkZ) {
+        return this.directory.resolve(world.toString())
+                .resolve("r." + (chunkX >> RegionBitmap.SHIFT) + "."
+                        + chunkY + "." + (chunkZ >> RegionBitmap.SHIFT)
+                        + ".planets");
+    }
+
+    @Nullable
+    private Region getRegion(Path file, boolean create) throws IOException {
+        Region region = this.regions.get(file);
+        if (region != null) {
+            return region;
+        }
+        if (!create && !Files.exists(file)) {
+            return null;
+        }
+        Files.createDirectories(file.getParent());
+        region = new Region(FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        this.regions.put(file, region);
+        if (this.regions.size() > MAX_OPEN_REGIONS) {
+            Iterator<Region> eldest = this.regions.values().iterator();
+            FileChannel channel = eldest.next().channel;
+            eldest.remove();
+            channel.force(false);
+            channel.close();
+        }
+        return region;
+    }
+
+    @Override
+    public synchronized void selectPlanets(UUID world, Vector3i minChunk,
+            Vector3i maxChunk, PlanetRowHandler handler) {
+        try {
+            for (int cx = minChunk.getX(); cx <= maxChunk.getX(); cx++) {
+                for (int cy = minChunk.getY(); cy <= maxChunk.getY(); cy++) {
+                    for (int cz = minChunk.getZ(); cz <= maxChunk.getZ();
+                            cz++) {
+                        selectChunk(world, cx, cy, cz, handler);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't read planet regions", e);
+        }
+    }
+
+    private void selectChunk(UUID world, int chunkX, int chunkY, int chunkZ,
+            PlanetRowHandler handler) throws IOException {
+        Region region =
+                getRegion(regionFile(world, chunkX, chunkY, chunkZ), false);
+        ChunkPlanetData data =
+                region == null ? null : region.read(chunkIndex(chunkX, chunkZ));
+        if (data == null) {
+            return;
+        }
+        for (Planet planet : data.getPlanets()) {
+            Vector3i pos = planet.getPosition();
+            handler.handle(chunkX, chunkY, chunkZ, pos.getX(), pos.getY(),
+                    pos.getZ(), planet.getRadius());
+        }
+    }
+
+    /**
+     * Writes the planets under the storage's lock, then forces the touched
+     * files to disk outside it, so reads don't wait on the sync.
+     */
+    @Override
+    public void insertPlanets(Collection<StoredPlanet> planets) {
+        Map<UUID, ListMultimap<Vector3i, Planet>> byWorld = new HashMap<>();
+        for (StoredPlanet stored : planets) {
+            byWorld.computeIfAbsent(stored.getWorld(),
+                    k -> ArrayListMultimap.create())
+                    .put(stored.getChunk(), stored.getPlanet());
+        }
+        List<FileChannel> touched = new ArrayList<>();
+        try {
+            synchronized (this) {
+                write(byWorld, touched);
+            }
+            for (FileChannel channel : touched) {
+                try {
+                    channel.force(false);
+                } catch (ClosedChannelException e) {
+                    // Regions are forced before they are closed.
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't write planet regions", e);
+        }
+    }
+
+    private void write(Map<UUID, ListMultimap<Vector3i, Planet>> byWorld,
+            List<FileChannel> touched) throws IOException {
+        for (Map.Entry<UUID, ListMultimap<Vector3i, Planet>> world : byWorld
+                .entrySet()) {
+            for (Vector3i chunk : world.getValue().keySet()) {
+                Region region = getRegion(regionFile(world.getKey(),
+                        chunk.getX(), chunk.getY(), chunk.getZ()), true);
+                int index = chunkIndex(chunk.getX(), chunk.getZ());
+                ChunkPlanetData existing = region.read(index);
+                List<Planet> combined = new ArrayList<>();
+                if (existing != null) {
+                    combined.addAll(existing.getPlanets());
+                }
+                combined.addAll(world.getValue().get(chunk));
+                region.write(index,
+                        encode(ChunkPlanetData.fromPlanets(combined)));
+                if (!touched.contains(region.channel)) {
+                    touched.add(region.channel);
+                }
+            }
+        }
+    }
+
+    private ByteBuffer encode(ChunkPlanetData data) {
+        int size = data.getEncodedSize();
+        if (this.encodeBuffer.capacity() < size) {
+            this.encodeBuffer = ByteBuffer
+                    .allocate(Math.max(size, this.encodeBuffer.capacity() * 2));
+        }
+        this.encodeBuffer.clear();
+        data.write(this.encodeBuffer);
+        this.encodeBuffer.flip();
+        return this.encodeBuffer;
+    }
+
+    @Override
+    public synchronized void clear() {
+        close();
+        if (!Files.exists(this.directory)) {
+            return;
+        }
+        try (
+                Stream<Path> files = Files.walk(this.directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder())
+                    .collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Couldn't delete planet regions",
+                    e);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Region region : this.regions.values()) {
+            try {
+                region.channel.force(false);
+                region.channel.close();
+            } catch (IOException e) {
+                // Nothing useful to do, writes already finished.
+            }
+        }
+        this.regions.clear();
+    }
+
+}
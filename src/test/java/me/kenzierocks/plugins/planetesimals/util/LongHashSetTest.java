@@ -0,0 +1,101 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest {
+
+    private static void assertElements(Set<Long> expected, LongHashSet set) {
+        Set<Long> elements = new HashSet<>();
+        set.forEach(value -> assertTrue(elements.add(value)));
+        assertEquals(expected, elements);
+    }
+
+    @Test
+    public void matchesHashSet() {
+        Random random = new Random(3);
+        for (int round = 0; round < 100; round++) {
+            LongHashSet set = new LongHashSet(random.nextInt(40));
+            Set<Long> expected = new HashSet<>();
+            int range = 1 + random.nextInt(500);
+            for (int i = 0; i < 5000; i++) {
+                long value = LongObjectHashMapTest.randomKey(random, range);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        assertEquals(expected.add(value), set.add(value));
+                        break;
+                    case 1:
+                        assertEquals(expected.remove(value),
+                                set.remove(value));
+                        break;
+                    case 2:
+                        assertEquals(expected.contains(value),
+                                set.contains(value));
+                        break;
+                    default:
+                        throw new AssertionError();
+                }
+                assertEquals(expected.size(), set.size());
+            }
+            assertElements(expected, set);
+        }
+    }
+
+    @Test
+    public void handlesExtremeValues() {
+        LongHashSet set = new LongHashSet();
+        Set<Long> expected = new HashSet<>();
+        for (long value : new long[] { 0, -1, Long.MIN_VALUE,
+                Long.MAX_VALUE }) {
+            assertTrue(set.add(value));
+            assertFalse(set.add(value));
+            expected.add(value);
+        }
+        assertElements(expected, set);
+    }
+
+    @Test
+    public void clearEmptiesTheSet() {
+        LongHashSet set = new LongHashSet();
+        for (long i = 0; i < 100; i++) {
+            set.add(i);
+        }
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(5));
+        assertTrue(set.add(5));
+        assertEquals(1, set.size());
+    }
+
+}
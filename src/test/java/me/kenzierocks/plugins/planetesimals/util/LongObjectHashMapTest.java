@@ -0,0 +1,164 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LongObjectHashMapTest {
+
+    // Small ranges make keys repeat, and the multiplier makes clusters of
+    // keys that share low bits, so probe runs form and get shifted.
+    static long randomKey(Random random, int range) {
+        long key = random.nextInt(range) - range / 2;
+        return random.nextBoolean() ? key : key * 0x100000001L;
+    }
+
+    private static void checkAgainstLinkedHashMap(boolean accessOrder) {
+        Random random = new Random(accessOrder ? 1 : 2);
+        for (int round = 0; round < 100; round++) {
+            LongObjectHashMap<Long> map = new LongObjectHashMap<>(
+                    random.nextInt(40), accessOrder);
+            Map<Long, Long> expected =
+                    new LinkedHashMap<>(16, 0.75f, accessOrder);
+            int range = 1 + random.nextInt(500);
+            for (int i = 0; i < 5000; i++) {
+                long key = randomKey(random, range);
+                Long value = (long) i;
+                switch (random.nextInt(6)) {
+                    case 0:
+                    case 1:
+                        assertEquals(expected.put(key, value),
+                                map.put(key, value));
+                        break;
+                    case 2:
+                        assertEquals(expected.get(key), map.get(key));
+                        break;
+                    case 3:
+                        assertEquals(expected.remove(key), map.remove(key));
+                        break;
+                    case 4:
+                        assertEquals(
+                                expected.computeIfAbsent(key, k -> value),
+                                map.computeIfAbsent(key, k -> value));
+                        break;
+                    case 5:
+                        if (!expected.isEmpty()) {
+                            long eldest =
+                                    expected.keySet().iterator().next();
+                            assertEquals(eldest, map.eldestKey());
+                            assertEquals(expected.remove(eldest),
+                                    map.remove(eldest));
+                        }
+                        break;
+                    default:
+                        throw new AssertionError();
+                }
+                assertEquals(expected.size(), map.size());
+                assertEquals(expected.containsKey(key),
+                        map.containsKey(key));
+            }
+            assertEntries(expected, map);
+        }
+    }
+
+    private static void assertEntries(Map<Long, Long> expected,
+            LongObjectHashMap<Long> map) {
+        List<Long> keys = new ArrayList<>();
+        List<Long> values = new ArrayList<>();
+        map.forEach((key, value) -> {
+            keys.add(key);
+            values.add(value);
+        });
+        assertEquals(new ArrayList<>(expected.keySet()), keys);
+        assertEquals(new ArrayList<>(expected.values()), values);
+    }
+
+    @Test
+    public void matchesLinkedHashMapInInsertionOrder() {
+        checkAgainstLinkedHashMap(false);
+    }
+
+    @Test
+    public void matchesLinkedHashMapInAccessOrder() {
+        checkAgainstLinkedHashMap(true);
+    }
+
+    @Test
+    public void keepsOrderWhileGrowing() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>(0, false);
+        Map<Long, Long> expected = new LinkedHashMap<>();
+        for (long i = 0; i < 10000; i++) {
+            long key = Long.rotateLeft(i, 40) ^ -i;
+            map.put(key, i);
+            expected.put(key, i);
+        }
+        assertEntries(expected, map);
+    }
+
+    @Test
+    public void handlesExtremeKeys() {
+        LongObjectHashMap<String> map = new LongObjectHashMap<>();
+        long[] keys = { 0, -1, Long.MIN_VALUE, Long.MAX_VALUE };
+        for (long key : keys) {
+            assertNull(map.put(key, Long.toString(key)));
+        }
+        for (long key : keys) {
+            assertEquals(Long.toString(key), map.get(key));
+        }
+        assertEquals(0, map.eldestKey());
+    }
+
+    @Test
+    public void clearEmptiesTheMap() {
+        LongObjectHashMap<Long> map = new LongObjectHashMap<>();
+        for (long i = 0; i < 100; i++) {
+            map.put(i, i);
+        }
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertFalse(map.containsKey(5));
+        map.put(7, 7L);
+        assertEquals(7, map.eldestKey());
+        assertEquals(1, map.size());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void emptyMapHasNoEldestKey() {
+        new LongObjectHashMap<>().eldestKey();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableSet;
+
+public class VectorHelperTest {
+
+    private static final Vector3i ORIGIN = new Vector3i(5, -7, 11);
+
+    @Test
+    public void hasTwentySixNeighbors() {
+        Set<Vector3i> neighbors = VectorHelper.getNeighbors(ORIGIN);
+        assertEquals(VectorHelper.NEIGHBOR_COUNT, neighbors.size());
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    Vector3i cell = ORIGIN.add(x, y, z);
+                    assertEquals(cell.toString(), !cell.equals(ORIGIN),
+                            neighbors.contains(cell));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void forEachNeighborVisitsEachOnce() {
+        Set<Vector3i> neighbors = new HashSet<>();
+        VectorHelper.forEachNeighbor(ORIGIN.getX(), ORIGIN.getY(),
+                ORIGIN.getZ(),
+                (x, y, z) -> assertTrue(neighbors.add(new Vector3i(x, y, z))));
+        assertEquals(VectorHelper.getNeighbors(ORIGIN), neighbors);
+    }
+
+    @Test
+    public void hasSixFaceNeighbors() {
+        Set<Vector3i> faces = new HashSet<>();
+        VectorHelper.forEachFaceNeighbor(ORIGIN.getX(), ORIGIN.getY(),
+                ORIGIN.getZ(),
+                (x, y, z) -> assertTrue(faces.add(new Vector3i(x, y, z))));
+        assertEquals(ImmutableSet.of(ORIGIN.add(-1, 0, 0),
+                ORIGIN.add(1, 0, 0), ORIGIN.add(0, -1, 0),
+                ORIGIN.add(0, 1, 0), ORIGIN.add(0, 0, -1),
+                ORIGIN.add(0, 0, 1)), faces);
+    }
+
+    @Test
+    public void indexedOffsetsMatchNeighbors() {
+        Set<Vector3i> neighbors = new HashSet<>();
+        for (int i = 0; i < VectorHelper.NEIGHBOR_COUNT; i++) {
+            Vector3i offset = new Vector3i(VectorHelper.getNeighborX(i),
+                    VectorHelper.getNeighborY(i),
+                    VectorHelper.getNeighborZ(i));
+            if (i < VectorHelper.FACE_NEIGHBOR_COUNT) {
+                assertEquals(1, Math.abs(offset.getX())
+                        + Math.abs(offset.getY()) + Math.abs(offset.getZ()));
+            }
+            neighbors.add(ORIGIN.add(offset));
+        }
+        assertEquals(VectorHelper.getNeighbors(ORIGIN), neighbors);
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.world;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector3i;
+
+public class ChunkBoundaryTest {
+
+    private static Set<Vector3i> positions(Set<ChunkBoundary> chunks) {
+        Set<Vector3i> positions = new HashSet<>();
+        for (ChunkBoundary chunk : chunks) {
+            positions.add(chunk.getChunkMin());
+        }
+        assertEquals(chunks.size(), positions.size());
+        return positions;
+    }
+
+    @Test
+    public void neighborsOfOneChunk() {
+        Vector3i center = new Vector3i(-1, 0, 2);
+        Set<Vector3i> expected = new HashSet<>();
+        for (int x = -1; x <= 1; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -1; z <= 1; z++) {
+                    if (x != 0 || y != 0 || z != 0) {
+                        expected.add(center.add(x, y, z));
+                    }
+                }
+            }
+        }
+        assertEquals(expected, positions(
+                ChunkBoundary.getNeighbors(ChunkBoundary.create(center))));
+    }
+
+    @Test
+    public void neighborsOfThreeByThreeArea() {
+        List<ChunkBoundary> area = new ArrayList<>();
+        for (int x = -1; x <= 1; x++) {
+            for (int z = -1; z <= 1; z++) {
+                area.add(ChunkBoundary.create(x, 0, z));
+            }
+        }
+        // Every chunk within one of the area: the area's own chunks are
+        // neighbors of each other.
+        Set<Vector3i> expected = new HashSet<>();
+        for (int x = -2; x <= 2; x++) {
+            for (int y = -1; y <= 1; y++) {
+                for (int z = -2; z <= 2; z++) {
+                    expected.add(new Vector3i(x, y, z));
+                }
+            }
+        }
+        assertEquals(expected, positions(ChunkBoundary.getNeighbors(area)));
+    }
+
+}
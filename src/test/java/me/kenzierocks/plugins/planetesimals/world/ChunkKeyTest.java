@@ -0,0 +1,109 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.world;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector3i;
+
+public class ChunkKeyTest {
+
+    private static final int MIN_XZ = -(1 << 25);
+    private static final int MAX_XZ = (1 << 25) - 1;
+    private static final int MIN_Y = -(1 << 11);
+    private static final int MAX_Y = (1 << 11) - 1;
+
+    private static void assertRoundTrips(int x, int y, int z) {
+        long key = ChunkKey.pack(x, y, z);
+        String chunk = x + ", " + y + ", " + z;
+        assertEquals(chunk, x, ChunkKey.getX(key));
+        assertEquals(chunk, y, ChunkKey.getY(key));
+        assertEquals(chunk, z, ChunkKey.getZ(key));
+        assertEquals(new Vector3i(x, y, z), ChunkKey.toVector(key));
+        assertEquals(key, ChunkKey.pack(new Vector3i(x, y, z)));
+    }
+
+    @Test
+    public void roundTripsAroundOrigin() {
+        for (int x = -3; x <= 3; x++) {
+            for (int y = -3; y <= 3; y++) {
+                for (int z = -3; z <= 3; z++) {
+                    assertRoundTrips(x, y, z);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void roundTripsAtLimits() {
+        int[] xz = { MIN_XZ, MIN_XZ + 1, -1875000, -1, 0, 1, 1874999,
+                MAX_XZ - 1, MAX_XZ };
+        int[] y = { MIN_Y, -1, 0, 1, 15, MAX_Y };
+        for (int x : xz) {
+            for (int cy : y) {
+                for (int z : xz) {
+                    assertRoundTrips(x, cy, z);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void packsNearbyChunksApart() {
+        Set<Long> keys = new HashSet<>();
+        for (int x = -8; x <= 8; x++) {
+            for (int y = -8; y <= 8; y++) {
+                for (int z = -8; z <= 8; z++) {
+                    assertTrue(keys.add(ChunkKey.pack(x, y, z)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void neighborsMatchChunkBoundary() {
+        for (Vector3i chunk : new Vector3i[] { Vector3i.ZERO,
+                new Vector3i(-1, 0, -1), new Vector3i(MIN_XZ + 1, 0,
+                        MAX_XZ - 1) }) {
+            Set<Vector3i> neighbors = new HashSet<>();
+            ChunkKey.forEachNeighbor(ChunkKey.pack(chunk),
+                    key -> assertTrue(
+                            neighbors.add(ChunkKey.toVector(key))));
+            Set<Vector3i> expected = new HashSet<>();
+            for (ChunkBoundary neighbor : ChunkBoundary
+                    .getNeighbors(ChunkBoundary.create(chunk))) {
+                expected.add(neighbor.getChunkMin());
+            }
+            assertEquals(expected, neighbors);
+        }
+    }
+
+}
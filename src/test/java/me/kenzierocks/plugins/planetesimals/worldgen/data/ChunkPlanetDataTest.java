@@ -0,0 +1,168 @@
+/*
+ * This file is part of Planetesimals, licensed under the MIT License (MIT).
+ *
+ * Copyright (c) kenzierocks (Kenzie Togami) <https://kenzierocks.me>
+ * Copyright (c) contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package me.kenzierocks.plugins.planetesimals.worldgen.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+import com.flowpowered.math.vector.Vector3i;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import me.kenzierocks.plugins.planetesimals.worldgen.Planet;
+
+public class ChunkPlanetDataTest {
+
+    private static final ImmutableSet<Planet> PLANETS = ImmutableSet.of(
+            Planet.create(new Vector3i(0, 0, 0), 0),
+            Planet.create(new Vector3i(-30000000, 255, 29999999), 14),
+            Planet.create(new Vector3i(17, Short.MIN_VALUE, -1),
+                    Short.MAX_VALUE),
+            Planet.create(new Vector3i(Integer.MAX_VALUE, Short.MAX_VALUE,
+                    Integer.MIN_VALUE), 1));
+
+    private static ByteBuffer encode(ChunkPlanetData data) {
+        ByteBuffer buffer = ByteBuffer.allocate(data.getEncodedSize());
+        data.write(buffer);
+        assertEquals(0, buffer.remaining());
+        buffer.flip();
+        return buffer;
+    }
+
+    private static ByteBuffer encodeLegacy(Iterable<Planet> planets,
+            int recordLength) {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        for (Planet planet : planets) {
+            Vector3i pos = planet.getPosition();
+            buffer.putInt(0).putInt(recordLength);
+            int end = buffer.position() + recordLength;
+            buffer.putInt(pos.getX()).putInt(pos.getY()).putInt(pos.getZ())
+                    .putInt(planet.getRadius());
+            buffer.position(end);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    public void roundTripsV2() {
+        ByteBuffer buffer = encode(ChunkPlanetData.fromPlanets(PLANETS));
+        assertEquals(8 + PLANETS.size() * 12, buffer.remaining());
+        assertEquals(PLANETS, ChunkPlanetData.read(buffer).getPlanets());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void roundTripsEmptyV2() {
+        ByteBuffer buffer =
+                encode(ChunkPlanetData.fromPlanets(ImmutableList.of()));
+        assertEquals(8, buffer.remaining());
+        assertTrue(ChunkPlanetData.read(buffer).getPlanets().isEmpty());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void roundTripsThroughStreams() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ChunkPlanetData.fromPlanets(PLANETS).writeToFile(out);
+        ChunkPlanetData read = ChunkPlanetData
+                .readFromFile(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(PLANETS, read.getPlanets());
+    }
+
+    @Test
+    public void stopsAfterV2Data() {
+        ChunkPlanetData data = ChunkPlanetData.fromPlanets(PLANETS);
+        ByteBuffer buffer = ByteBuffer.allocate(data.getEncodedSize() + 4);
+        data.write(buffer);
+        buffer.putInt(-1).flip();
+        assertEquals(PLANETS, ChunkPlanetData.read(buffer).getPlanets());
+        assertEquals(4, buffer.remaining());
+    }
+
+    @Test
+    public void readsLegacy() {
+        ByteBuffer buffer = encodeLegacy(PLANETS, 16);
+        assertEquals(PLANETS, ChunkPlanetData.read(buffer).getPlanets());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void readsLegacyWithLongerRecords() {
+        ByteBuffer buffer = encodeLegacy(PLANETS, 24);
+        assertEquals(PLANETS, ChunkPlanetData.read(buffer).getPlanets());
+        assertEquals(0, buffer.remaining());
+    }
+
+    @Test
+    public void readsEmptyLegacy() {
+        assertTrue(ChunkPlanetData.read(ByteBuffer.allocate(0)).getPlanets()
+                .isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedLegacyRecord() {
+        ByteBuffer buffer = encodeLegacy(PLANETS, 16);
+        buffer.limit(buffer.limit() - 1);
+        ChunkPlanetData.read(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedLegacyHeader() {
+        ByteBuffer legacy = encodeLegacy(PLANETS, 16);
+        ByteBuffer buffer = ByteBuffer.allocate(legacy.remaining() + 4);
+        buffer.put(legacy).putInt(0).flip();
+        ChunkPlanetData.read(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsShortLegacyRecord() {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        buffer.putInt(0).putInt(8).putInt(1).putInt(2).flip();
+        ChunkPlanetData.read(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTruncatedV2() {
+        ByteBuffer buffer = encode(ChunkPlanetData.fromPlanets(PLANETS));
+        buffer.limit(buffer.limit() - 1);
+        ChunkPlanetData.read(buffer);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOutOfRangeY() {
+        ChunkPlanetData data = ChunkPlanetData.fromPlanets(ImmutableList
+                .of(Planet.create(new Vector3i(0, 1 << 16, 0), 1)));
+        data.write(ByteBuffer.allocate(data.getEncodedSize()));
+    }
+
+}